@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.*;
+
+/**
+ * Compilation time of a module of many classes, only a few of them having symbolic members,
+ * without annotation processing, with SymProc and with SymProc reporting all its notes
+ * (see <b><code>symprog.verbosity</code></b>).<br>
+ * The JDK's <b><code>tools.jar</code></b> has to be on the class path, along with SymProc.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public class CompileBenchmark {
+	private static final int CLASSES = 1000, SYMBOLIC = 50; // Classes having symbolic members
+	private static final int MEMBERS = 10; // Per class
+	private static final int ITERATIONS = 10; // Best one kept
+
+	public static void main(String[] args) throws Exception {
+		JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+		List<JavaFileObject> sources = sources();
+		File out = Files.createTempDirectory("symprog").toFile();
+		List<String> options = Arrays.asList("-d", out.getPath(), "-cp", System.getProperty("java.class.path"));
+
+		// The first pass warms the compiler up.
+		for (int pass=0; pass<2; pass++) {
+			boolean print = pass > 0;
+			measure(javac, sources, options, print, "no processing", "-proc:none");
+			measure(javac, sources, options, print, "SymProc", "-processor", "symprog.SymProc");
+			measure(javac, sources, options, print, "SymProc (verbose)", "-processor", "symprog.SymProc",
+					"-Asymprog.verbosity=3");
+		}
+	}
+
+	private static List<JavaFileObject> sources() {
+		List<JavaFileObject> sources = new ArrayList<>();
+		for (int i=0; i<CLASSES; i++) {
+			StringBuilder s = new StringBuilder("class C" + i + " {\n");
+			String annotation = i % (CLASSES / SYMBOLIC) == 0 ? "@symprog.Symbolic " : "";
+			for (int m=0; m<MEMBERS; m++) {
+				s.append("\t" + annotation + "static int m" + m + "(int i, String s) {return i + s.length();}\n");
+			}
+			String source = s.append("}\n").toString();
+
+			sources.add(new SimpleJavaFileObject(URI.create("string:///C" + i + ".java"), JavaFileObject.Kind.SOURCE) {
+				@Override
+				public CharSequence getCharContent(boolean ignoreEncodingErrors) {return source;}
+			});
+		}
+		return sources;
+	}
+
+	private static void measure(JavaCompiler javac, List<JavaFileObject> sources, List<String> options,
+			boolean print, String what, String... processing) {
+		List<String> all = new ArrayList<>(options);
+		all.addAll(Arrays.asList(processing));
+
+		long best = Long.MAX_VALUE;
+		for (int i=0; i<ITERATIONS; i++) {
+			long time = System.nanoTime();
+			boolean compiled = javac.getTask(null, null, d -> {}, all, null, sources).call();
+			time = System.nanoTime() - time;
+
+			if (!compiled) {throw new IllegalStateException(what + ": compilation failed");}
+			best = Math.min(best, time);
+		}
+		if (print) {System.out.println(String.format("%-24s %8.1f ms", what, best / 1e6));}
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import symprog.*;
+
+/**
+ * Time per node of the evaluation of chains of increments of growing depths, the deep ones
+ * being evaluated iteratively (see <b><code>symprog.iterativeDepth</code></b>). Running it with
+ * <b><code>-Dsymprog.iterativeDepth=-1</code></b> overflows the stack on the deep ones.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public class DepthBenchmark {
+	private static final int NODES = 10_000_000; // Evaluated per depth
+
+	@Symbolic(pure=true) private static Integer inc(Integer i) {return i + 1;}
+
+	public static void main(String[] args) {
+		for (int depth: new int[] {100, 10_000, 100_000, 1_000_000}) {
+			measure(depth);
+		}
+	}
+
+	private static void measure(int depth) {
+		Term t = new Value(0);
+		for (int i=0; i<depth; i++) {t = $inc.build(t);}
+
+		long check = 0;
+		String what = "depth " + depth;
+		try {
+			int iterations = Math.max(NODES / depth, 2);
+			for (int i=0; i<iterations / 2; i++) {check += (Integer)t.evaluate();}
+
+			long time = System.nanoTime();
+			for (int i=0; i<iterations; i++) {check += (Integer)t.evaluate();}
+			time = System.nanoTime() - time;
+
+			long string = System.nanoTime();
+			check += t.toString().length();
+			string = System.nanoTime() - string;
+
+			System.out.println(String.format("%-16s %8.1f ns/node %8.1f ns/node toString() (%d)", what,
+					(double)time / iterations / depth, (double)string / depth, check));
+		}
+		catch (StackOverflowError e) {
+			System.out.println(String.format("%-16s stack overflow", what));
+		}
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import symprog.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Time and allocation per evaluation of an arithmetic tree like the GeneticProgramming's target.
+ *
+ * Functions work on small integers, whose boxes are cached, so that the allocations measured
+ * are the interpreter's own ones only (expected to be zero). Running it with
+ * <b><code>-Dsymprog.compileThreshold=-1</code></b> measures the interpreter alone, otherwise
+ * the tree is compiled once hot.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public class EvaluationBenchmark {
+	private static final int WARMUP = 200_000, ITERATIONS = 1_000_000;
+
+	@Symbolic private Integer a() {return 1;}
+	@Symbolic private Integer b() {return 2;}
+	@Symbolic private Integer x = 3;
+
+	@Symbolic private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic private static Integer sub(Integer i, Integer j) {return i - j;}
+	@Symbolic private static Integer mul(Integer i, Integer j) {return i * j;}
+
+	// Same functions on doubles, boxed or primitive.
+	@Symbolic private Double y = 3.;
+	@Symbolic private static Double boxedAdd(Double i, Double j) {return i + j;}
+	@Symbolic private static Double boxedSub(Double i, Double j) {return i - j;}
+	@Symbolic private static Double boxedMul(Double i, Double j) {return i * j;}
+	@Symbolic private static double doubleAdd(double i, double j) {return i + j;}
+	@Symbolic private static double doubleSub(double i, double j) {return i - j;}
+	@Symbolic private static double doubleMul(double i, double j) {return i * j;}
+
+	// x*x - 2*x + 1
+	private final Term $target = $add.build($sub.build($mul.build($x,$x), $mul.build($b.build(), $x)), $a.build()).bind(this);
+
+	// Same tree with a free variable, evaluated for a whole batch of values.
+	private final Environment.Scope scope = new Environment.Scope();
+	private final Environment.Variable $v = scope.variable("x");
+	private final Term $free = $add.build($sub.build($mul.build($v,$v), $mul.build($b.build(), $v)), $a.build()).bind(this);
+	private static final int BATCH = 64;
+
+	private final Term $boxed = $boxedAdd.build($boxedSub.build($boxedMul.build($y,$y),
+			$boxedMul.build(new Value(2.), $y)), new Value(1.)).bind(this);
+	private final Term $primitive = $doubleAdd.build($doubleSub.build($doubleMul.build($y,$y),
+			$doubleMul.build(new Value(2.), $y)), new Value(1.)).bind(this);
+	private final Term $primitiveFree = $doubleAdd.build($doubleSub.build($doubleMul.build($v,$v),
+			$doubleMul.build(new Value(2.), $v)), new Value(1.)).bind(this);
+
+	public static void main(String[] args) {
+		EvaluationBenchmark b = new EvaluationBenchmark();
+		b.measure("evaluate()", b.$target);
+		b.measure("compile().evaluate()", b.$target.compile());
+		b.measureBatch("evaluateBatch()", b.$free, b.scope.batch(BATCH).set(b.$v, b.xs()));
+		b.measureBatch("primitive evaluateBatch()", b.$primitiveFree, b.scope.batch(BATCH).set(b.$v, b.ds()));
+		b.measureDouble("boxed evaluateAsDouble()", b.$boxed.compile());
+		b.measureDouble("evaluateAsDouble()", b.$primitive.compile());
+	}
+
+	private void measure(String what, Term t) {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		int check = 0;
+		for (int i=0; i<WARMUP; i++) {check += (Integer)t.evaluate();}
+
+		long bytes = threads.getThreadAllocatedBytes(thread);
+		long time = System.nanoTime();
+		for (int i=0; i<ITERATIONS; i++) {check += (Integer)t.evaluate();}
+		time = System.nanoTime() - time;
+		bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+		System.out.println(String.format("%-26s %8.1f ns/op %8.2f B/op (%d)", what,
+				(double)time / ITERATIONS, (double)bytes / ITERATIONS, check));
+	}
+
+	// Doubles out of the small values' caches, the boxes between nodes being allocated or not.
+	private void measureDouble(String what, Term t) {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+
+		double check = 0;
+		for (int i=0; i<WARMUP; i++) {check += t.evaluateAsDouble(null);}
+
+		long bytes = threads.getThreadAllocatedBytes(thread);
+		long time = System.nanoTime();
+		for (int i=0; i<ITERATIONS; i++) {check += t.evaluateAsDouble(null);}
+		time = System.nanoTime() - time;
+		bytes = threads.getThreadAllocatedBytes(thread) - bytes;
+
+		System.out.println(String.format("%-26s %8.1f ns/op %8.2f B/op (%d)", what,
+				(double)time / ITERATIONS, (double)bytes / ITERATIONS, (long)check));
+	}
+
+	private Integer[] xs() {
+		Integer[] xs = new Integer[BATCH];
+		for (int i=0; i<BATCH; i++) {xs[i] = i % 8;}
+		return xs;
+	}
+
+	private double[] ds() {
+		double[] ds = new double[BATCH];
+		for (int i=0; i<BATCH; i++) {ds[i] = i % 8;}
+		return ds;
+	}
+
+	// Per row of the batch, the boxes of the values being part of the results.
+	private void measureBatch(String what, Term t, Environment.Batch batch) {
+		double check = 0;
+		for (int i=0; i<WARMUP / 8; i++) {check += t.evaluateBatch(batch)[0];} // Row loops warm up later.
+
+		long time = System.nanoTime();
+		for (int i=0; i<ITERATIONS / BATCH; i++) {check += t.evaluateBatch(batch)[0];}
+		time = System.nanoTime() - time;
+
+		System.out.println(String.format("%-26s %8.1f ns/op (%d)", what,
+				(double)time / (ITERATIONS / BATCH * BATCH), (long)check));
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import symprog.*;
+import java.util.Random;
+
+/**
+ * Heap retained by a population of random trees like the GeneticProgramming's individuals, as
+ * terms and as compact encodings (see {@link Encoding}), along with their evaluation time.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public class PopulationBenchmark {
+	private static final int POPULATION = 100_000, DEPTH = 6;
+
+	@Symbolic private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic private static Integer sub(Integer i, Integer j) {return i - j;}
+	@Symbolic private static Integer mul(Integer i, Integer j) {return i * j;}
+
+	private final MethodSymbol[] functions = {$add, $sub, $mul};
+	private final Environment.Scope scope = new Environment.Scope();
+	private final Environment.Variable $x = scope.variable("x");
+	private final Term[] terminals = {new Value(1), new Value(2), $x};
+	private final Random random = new Random(0);
+
+	private Term randomTree(int depth) {
+		if (depth == 0 || random.nextInt(4) == 0) {return terminals[random.nextInt(terminals.length)];}
+
+		return functions[random.nextInt(functions.length)].build(randomTree(depth-1), randomTree(depth-1));
+	}
+
+	public static void main(String[] args) {
+		PopulationBenchmark b = new PopulationBenchmark();
+		Environment env = b.scope.environment().set(b.$x, 3);
+
+		long heap = heap();
+		Term[] trees = new Term[POPULATION];
+		for (int i=0; i<POPULATION; i++) {trees[i] = b.randomTree(DEPTH);}
+		long treesHeap = heap() - heap;
+
+		heap = heap();
+		Encoding encoding = new Encoding();
+		int[][] codes = new int[POPULATION][];
+		long nodes = 0;
+		for (int i=0; i<POPULATION; i++) {
+			codes[i] = encoding.encode(trees[i]);
+			nodes += codes[i].length;
+		}
+		long codesHeap = heap() - heap;
+
+		long check = 0, time = System.nanoTime();
+		for (Term t: trees) {check += (Integer)t.evaluate(env);}
+		long treesTime = System.nanoTime() - time;
+
+		time = System.nanoTime();
+		for (int[] code: codes) {check -= (Integer)encoding.evaluate(code, env);}
+		long codesTime = System.nanoTime() - time;
+
+		System.out.println(String.format("%d trees of %d nodes", POPULATION, nodes));
+		System.out.println(String.format("%-10s %8.1f B/node %8.1f ns/node", "terms",
+				(double)treesHeap / nodes, (double)treesTime / nodes));
+		System.out.println(String.format("%-10s %8.1f B/node %8.1f ns/node (%d)", "encoding",
+				(double)codesHeap / nodes, (double)codesTime / nodes, check));
+	}
+
+	private static long heap() {
+		for (int i=0; i<3; i++) {System.gc();}
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
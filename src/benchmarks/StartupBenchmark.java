@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package benchmarks;
+
+import symprog.*;
+
+/**
+ * Initialization time of classes having many symbols, created at class initialization or
+ * lazily on first access (see <b><code>Symbolic.lazy()</code></b>).<br>
+ * Classes are only initialized once per JVM, so each one is measured once.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public class StartupBenchmark {
+	private static class Eager {
+		@Symbolic static Integer m0(Integer i) {return i + 0;}
+		@Symbolic static Integer m1(Integer i) {return i + 1;}
+		@Symbolic static Integer m2(Integer i) {return i + 2;}
+		@Symbolic static Integer m3(Integer i) {return i + 3;}
+		@Symbolic static Integer m4(Integer i) {return i + 4;}
+		@Symbolic static Integer m5(Integer i) {return i + 5;}
+		@Symbolic static Integer m6(Integer i) {return i + 6;}
+		@Symbolic static Integer m7(Integer i) {return i + 7;}
+		@Symbolic static Integer m8(Integer i) {return i + 8;}
+		@Symbolic static Integer m9(Integer i) {return i + 9;}
+		@Symbolic static Integer m10(Integer i) {return i + 10;}
+		@Symbolic static Integer m11(Integer i) {return i + 11;}
+		@Symbolic static Integer m12(Integer i) {return i + 12;}
+		@Symbolic static Integer m13(Integer i) {return i + 13;}
+		@Symbolic static Integer m14(Integer i) {return i + 14;}
+		@Symbolic static Integer m15(Integer i) {return i + 15;}
+		@Symbolic static Integer m16(Integer i) {return i + 16;}
+		@Symbolic static Integer m17(Integer i) {return i + 17;}
+		@Symbolic static Integer m18(Integer i) {return i + 18;}
+		@Symbolic static Integer m19(Integer i) {return i + 19;}
+		@Symbolic static Integer m20(Integer i) {return i + 20;}
+		@Symbolic static Integer m21(Integer i) {return i + 21;}
+		@Symbolic static Integer m22(Integer i) {return i + 22;}
+		@Symbolic static Integer m23(Integer i) {return i + 23;}
+		@Symbolic static Integer m24(Integer i) {return i + 24;}
+		@Symbolic static Integer m25(Integer i) {return i + 25;}
+		@Symbolic static Integer m26(Integer i) {return i + 26;}
+		@Symbolic static Integer m27(Integer i) {return i + 27;}
+		@Symbolic static Integer m28(Integer i) {return i + 28;}
+		@Symbolic static Integer m29(Integer i) {return i + 29;}
+		@Symbolic static Integer m30(Integer i) {return i + 30;}
+		@Symbolic static Integer m31(Integer i) {return i + 31;}
+	}
+
+	private static class Lazy {
+		@Symbolic(lazy=true) static Integer m0(Integer i) {return i + 0;}
+		@Symbolic(lazy=true) static Integer m1(Integer i) {return i + 1;}
+		@Symbolic(lazy=true) static Integer m2(Integer i) {return i + 2;}
+		@Symbolic(lazy=true) static Integer m3(Integer i) {return i + 3;}
+		@Symbolic(lazy=true) static Integer m4(Integer i) {return i + 4;}
+		@Symbolic(lazy=true) static Integer m5(Integer i) {return i + 5;}
+		@Symbolic(lazy=true) static Integer m6(Integer i) {return i + 6;}
+		@Symbolic(lazy=true) static Integer m7(Integer i) {return i + 7;}
+		@Symbolic(lazy=true) static Integer m8(Integer i) {return i + 8;}
+		@Symbolic(lazy=true) static Integer m9(Integer i) {return i + 9;}
+		@Symbolic(lazy=true) static Integer m10(Integer i) {return i + 10;}
+		@Symbolic(lazy=true) static Integer m11(Integer i) {return i + 11;}
+		@Symbolic(lazy=true) static Integer m12(Integer i) {return i + 12;}
+		@Symbolic(lazy=true) static Integer m13(Integer i) {return i + 13;}
+		@Symbolic(lazy=true) static Integer m14(Integer i) {return i + 14;}
+		@Symbolic(lazy=true) static Integer m15(Integer i) {return i + 15;}
+		@Symbolic(lazy=true) static Integer m16(Integer i) {return i + 16;}
+		@Symbolic(lazy=true) static Integer m17(Integer i) {return i + 17;}
+		@Symbolic(lazy=true) static Integer m18(Integer i) {return i + 18;}
+		@Symbolic(lazy=true) static Integer m19(Integer i) {return i + 19;}
+		@Symbolic(lazy=true) static Integer m20(Integer i) {return i + 20;}
+		@Symbolic(lazy=true) static Integer m21(Integer i) {return i + 21;}
+		@Symbolic(lazy=true) static Integer m22(Integer i) {return i + 22;}
+		@Symbolic(lazy=true) static Integer m23(Integer i) {return i + 23;}
+		@Symbolic(lazy=true) static Integer m24(Integer i) {return i + 24;}
+		@Symbolic(lazy=true) static Integer m25(Integer i) {return i + 25;}
+		@Symbolic(lazy=true) static Integer m26(Integer i) {return i + 26;}
+		@Symbolic(lazy=true) static Integer m27(Integer i) {return i + 27;}
+		@Symbolic(lazy=true) static Integer m28(Integer i) {return i + 28;}
+		@Symbolic(lazy=true) static Integer m29(Integer i) {return i + 29;}
+		@Symbolic(lazy=true) static Integer m30(Integer i) {return i + 30;}
+		@Symbolic(lazy=true) static Integer m31(Integer i) {return i + 31;}
+	}
+
+	public static void main(String[] args) throws Exception {
+		// Library's classes loaded beforehand
+		new MethodSymbol(StartupBenchmark.class, "main", new Class<?>[] {String[].class}, false, null, -1).hashCode();
+
+		long eager = System.nanoTime();
+		Class.forName(Eager.class.getName());
+		eager = System.nanoTime() - eager;
+		long eagerSymbol = System.nanoTime();
+		MethodSymbol e = Eager.$m0;
+		eagerSymbol = System.nanoTime() - eagerSymbol;
+
+		long lazy = System.nanoTime();
+		Class.forName(Lazy.class.getName());
+		lazy = System.nanoTime() - lazy;
+		long lazySymbol = System.nanoTime();
+		MethodSymbol l = Lazy.$m0();
+		lazySymbol = System.nanoTime() - lazySymbol;
+
+		System.out.println(String.format("%-8s %8.1f us class initialization %8.1f us first symbol (%s)",
+				"eager", eager / 1e3, eagerSymbol / 1e3, e));
+		System.out.println(String.format("%-8s %8.1f us class initialization %8.1f us first symbol (%s)",
+				"lazy", lazy / 1e3, lazySymbol / 1e3, l));
+	}
+}
@@ -144,12 +144,12 @@ public class Example2 {
 		return _WHERE + " " + cond;
 	}
 
-	@Symbolic("_")
+	@Symbolic(value="_", pure=true)
 	static String OR(String expr1, String expr2) {
 		return "(" + expr1 + " " + _OR + " " + expr2 + ")";
 	}
 
-	@Symbolic("_")
+	@Symbolic(value="_", pure=true)
 	static String AND(String expr1, String expr2) {
 		return "(" + expr1 + " " + _AND + " " + expr2 + ")";
 	}
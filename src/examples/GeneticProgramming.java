@@ -16,7 +16,13 @@
 package examples;
 
 import symprog.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Example of a symbolic regression using the symbolic annotation processor SymProc.
@@ -46,22 +52,25 @@ class GeneticProgramming {
 	private static final int MAX_ITER = 300;
 	private static final int STEP = 5; // Display granularity
 	private static final double END = 0.01;
+	private static final int CACHE_SIZE = 10_000; // Fitnesses of already evaluated individuals
 
 	// Terminal symbols
 
 	// Constants (notice that final fields would be also possible)
 	private static final double A=1., B=2.;
-	@Symbolic private Double a() {return A;}
-	@Symbolic private Double b() {return B;}
-	// Variable (free, but bound to an instance)
-	@Symbolic private Double x;
+	@Symbolic(pure=true) private double a() {return A;}
+	@Symbolic(pure=true) private double b() {return B;}
+	// Variable (free, its values are given by the evaluation environments)
+	private final Environment.Scope scope = new Environment.Scope();
+	private final Environment.Variable $x = scope.variable("x");
 
-	// Functions
+	// Functions (primitive ones, so that compiled trees pass their values unboxed, and pure ones,
+	// so that constant branches are folded)
 
-	@Symbolic private static Double add(Double i, Double j) {return i + j;}
-	@Symbolic private static Double sub(Double i, Double j) {return i - j;}
-	@Symbolic private static Double mul(Double i, Double j) {return i * j;}
-	@Symbolic private static Double abs(Double i) {return i < 0. ? -i : i;}
+	@Symbolic(pure=true) private static double add(double i, double j) {return i + j;}
+	@Symbolic(pure=true) private static double sub(double i, double j) {return i - j;}
+	@Symbolic(pure=true) private static double mul(double i, double j) {return i * j;}
+	@Symbolic(pure=true) private static double abs(double i) {return i < 0. ? -i : i;}
 
 	// Target formula (not a function) with the free variable x: x*x - 2*x + 1
 	// (notice that a constant method symbol can be used like $b or $a.apply())
@@ -69,15 +78,58 @@ class GeneticProgramming {
 
 	// Functions and terminals sets used to construct expressions
 
-	private MethodSymbol[] functions = new MethodSymbol[] {$add, $sub, $mul};
-	private Term[] terminals = new Term[] {new Value(A), $b.bind(this), $x.bind(this)}; // Notice the captured value A.
+	private DoubleMethodSymbol[] functions = new DoubleMethodSymbol[] {$add, $sub, $mul};
+	private Term[] terminals = new Term[] {new Value(A), $b.bind(this), $x}; // Notice the captured value A.
 
 	// Evaluation of the individuals
 
-	private Double fitness(Term $f) {
-		// Using a lambda to transform a formula to a function.
-		Fx g = x -> {this.x=x; return (Double)$abs.apply($sub.apply($f,$target)).evaluate();};
-		return integral(LOWER_BOUND, UPPER_BOUND, Fx.$f.bind(g));
+	private final FitnessCache cache = new FitnessCache(CACHE_SIZE);
+	private long shared; // Branches shared by the individuals evaluated together
+
+	// Individuals converge, so many of them have been already evaluated, and the other ones are
+	// evaluated together, their common branches only once.
+	private void evaluate(Individual[] pop, int from, int to) {
+		List<Individual> individuals = new ArrayList<>();
+		List<Term> $errors = new ArrayList<>();
+		for (int k=from; k<to; k++) {
+			pop[k].fitness = cache.get(pop[k].$expression);
+			if (pop[k].fitness == null) {
+				individuals.add(pop[k]);
+				// Constant branches evaluated once for all
+				$errors.add($abs.apply($sub.apply(pop[k].$expression,$target)).fold());
+			}
+		}
+
+		// Evaluated at all the steps of the integral at once
+		Forest forest = new Forest(scope, $errors.toArray(new Term[$errors.size()]));
+		double[][] errors = forest.evaluateBatch(scope.batch(STEPS.length).set($x, STEPS));
+		shared += forest.shared();
+
+		for (int i=0; i<errors.length; i++) {
+			Individual d = individuals.get(i);
+			d.fitness = sum(errors[i], 0, errors[i].length);
+			cache.put(d.$expression, d.fitness);
+		}
+	}
+
+	// Middles of the steps of the integral (see below), in order.
+	private static final double[] STEPS = steps(LOWER_BOUND, UPPER_BOUND).toArray();
+
+	private static java.util.stream.DoubleStream steps(double a, double b) {
+		double m = (a+b)/2.;
+		return b-a <= DX ? java.util.stream.DoubleStream.of(m) :
+				java.util.stream.DoubleStream.concat(steps(a,m), steps(m,b));
+	}
+
+	// Same sums as integral() for the values at the given steps.
+	private static double sum(double[] values, int from, int to) {
+		if (to-from == 1) {
+			return values[from] * (UPPER_BOUND-LOWER_BOUND) / STEPS.length;
+		}
+		else {
+			int m = (from+to)/2;
+			return sum(values,from,m) + sum(values,m,to);
+		}
 	}
 
 	public static interface Fx {@Symbolic Double f(Double x);}
@@ -105,7 +157,7 @@ class GeneticProgramming {
 		}
 		else {
 			if (randomIndex(10) > 3) { // 70%
-				MethodSymbol $func = functions[randomIndex(functions.length)];
+				DoubleMethodSymbol $func = functions[randomIndex(functions.length)];
 				Term $term1 = randomExpression(maxDepth-1);
 				Term $term2 = randomExpression(maxDepth-1);
 				return $func.apply($term1, $term2);
@@ -116,47 +168,68 @@ class GeneticProgramming {
 		}
 	}
 
-	// Genetic operations (mutation and crossover)
-
-	private boolean mutation(Term $s, int maxDepth) {
-		if (!$s.atomic()) {
-			if (randomIndex(10) > 3) { // 70%
-				$s.terms().set(randomIndex($s.terms().size()), randomExpression(maxDepth-1));
-				return true;
-			}
-			else {
-				Pt p = $t -> mutation($t, maxDepth-1);
-				T t = $s::terms;
-				// Fully symbolic with quotation to prevent evaluation.
-				return (Boolean)$anyMatch.apply(Pt.$p.bind(p).quote(), T.$t.bind(t)).evaluate();
-			}
+	// Genetic operations (mutation and crossover), new trees sharing the unchanged subtrees with
+	// the parents, which are left intact (see Term.with()).
+
+	// Random path below the roots, the same in both trees, empty if one of them is atomic.
+	private int[] randomPath(Term $a, Term $b) {
+		int[] path = new int[0];
+		while (!$a.atomic() && !$b.atomic()) {
+			int i = randomIndex(Math.min($a.terms().size(), $b.terms().size()));
+			path = Arrays.copyOf(path, path.length + 1);
+			path[path.length - 1] = i;
+			$a = $a.terms().get(i);
+			$b = $b.terms().get(i);
+			if (randomIndex(10) > 3) {break;} // 70%
 		}
-		return false;
+		return path;
 	}
 
-	private boolean crossover(Term $a, Term $b) { // maxDepth not necessary
-		if (!$a.atomic() && !$b.atomic()) {
-			if (randomIndex(10) > 3) { // 70%
-				int i = randomIndex($a.terms().size());
-				$a.terms().set(i, $b.terms().set(i, $a.terms().get(i)));
-				return true;
-			}
-			else {
-				Pt pa = $ta -> {
-					Pt pb = $tb -> crossover($ta, $tb);
-					return anyMatch(Pt.$p.bind(pb), $b.terms());
-				};
-				return anyMatch(Pt.$p.bind(pa), $a.terms());
-			}
-		}
-		return false;
+	private Term mutation(Term $s, int maxDepth) {
+		int[] path = randomPath($s, $s);
+		return path.length > 0 ? $s.with(randomExpression(maxDepth - path.length), path) : $s;
 	}
 
-	private static interface Pt {@Symbolic boolean p(Term t);} // Symbolic predicate of a term.
-	private static interface T {@Symbolic Term.List t();}
+	private Term[] crossover(Term $a, Term $b) { // maxDepth not necessary
+		int[] path = randomPath($a, $b);
+		if (path.length == 0) {return new Term[] {$a, $b};}
+
+		return new Term[] {$a.with($b.at(path), path), $b.with($a.at(path), path)};
+	}
 
-	@Symbolic private static boolean anyMatch(MethodSymbol $p, Term.List terms) {
-		return terms.stream().anyMatch($t->(Boolean)$p.apply($t.quote()).evaluate());
+	/**
+	 * Fitnesses by structure of the individuals, the least recently used ones being evicted.
+	 * Individuals are never mutated, so they're the keys themselves, interned to share their
+	 * subtrees.
+	 */
+	private static class FitnessCache {
+		private final Map<Term, Double> fitnesses;
+		private final Interner interner = new Interner();
+		private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+		public FitnessCache(int size) {
+			fitnesses = Collections.synchronizedMap(new LinkedHashMap<Term, Double>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Term, Double> eldest) {return size() > size;}
+			});
+		}
+
+		public Double get(Term $f) {
+			Double fitness = fitnesses.get($f);
+			(fitness != null ? hits : misses).incrementAndGet();
+			return fitness;
+		}
+
+		public void put(Term $f, Double fitness) {
+			fitnesses.put(interner.intern($f), fitness);
+		}
+
+		@Override
+		public String toString() {
+			return "hits=" + hits + ", misses=" + misses + ", size=" + fitnesses.size();
+		}
 	}
 
 	// Individual representation
@@ -180,12 +253,11 @@ class GeneticProgramming {
 			return $expression + " " + $fitness + "=" + fitness;
 		}
 
-		// TODO clone() not necessary since every individual is used only once for genetic operations.
 	}
 
 	public void run() {
 		try {
-			Fx f = x -> {this.x=x; return (Double)$target.evaluate();};
+			Fx f = x -> $target.evaluateAsDouble(scope.environment().set($x, x));
 			Term $g = $integral.apply($LOWER_BOUND, $UPPER_BOUND, Fx.$f.bind(f).quote());
 
 			System.out.println("Target: " + $target);
@@ -197,9 +269,9 @@ class GeneticProgramming {
 			Individual[] pop = new Individual[POP_SIZE];
 
 			for (int i=0; i<POP_SIZE; i++) {
-				Term $expr = randomExpression(MAX_DEPTH);
-				pop[i] = new Individual($expr, fitness($expr));
+				pop[i] = new Individual(randomExpression(MAX_DEPTH), null);
 			}
+			evaluate(pop, 0, POP_SIZE);
 			for (int j=0; j<MAX_ITER; j++) {
 				// Sort by fitness
 				Arrays.sort(pop);
@@ -217,17 +289,19 @@ class GeneticProgramming {
 				// The best ones are reproduced without modification.
 				// Crossover
 				for (int k=REPRODUCTION; k<REPRODUCTION+CROSSOVER; k+=2) {
-					crossover(pop[k].$expression, pop[k+1].$expression);
-					pop[k].fitness = fitness(pop[k].$expression);
-					pop[k+1].fitness = fitness(pop[k+1].$expression);
+					Term[] $children = crossover(pop[k].$expression, pop[k+1].$expression);
+					pop[k] = new Individual($children[0], null);
+					pop[k+1] = new Individual($children[1], null);
 				}
 				// Mutations
 				for (int k=REPRODUCTION+CROSSOVER; k<POP_SIZE; k++) {
-					mutation(pop[k].$expression, MAX_DEPTH);
-					pop[k].fitness = fitness(pop[k].$expression);
+					pop[k] = new Individual(mutation(pop[k].$expression, MAX_DEPTH), null);
 				}
+				evaluate(pop, REPRODUCTION, POP_SIZE);
 			}
 			System.out.println("Best: " + pop[0]);
+			System.out.println("Fitness cache: " + cache);
+			System.out.println("Shared branches: " + shared);
 		}
 		catch (Exception e) {e.printStackTrace();}
 	}
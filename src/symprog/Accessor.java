@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+/**
+ * Direct access to the symbolic members of a class, generated by {@link SymProc} as a class
+ * nested in it, so that symbols invoke their members without reflecting them first.<br>
+ * Members are numbered in declaration order and dispatched by {@link #access}, which converts
+ * the arguments as {@link java.lang.reflect.Method#invoke} does. Its failures are interpreted
+ * by the invoker, which tells the rejected arguments from the target's exceptions.<br>
+ * Members of the common arities are also dispatched by <code>access0</code> to
+ * <code>access3</code>, without arguments array.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public abstract class Accessor {
+	/**
+	 * Invokes the method, or reads the field, of the given index.
+	 *
+	 * @param member : member's index
+	 * @param instance : receiver, ignored by static members
+	 * @param args : method's arguments, ignored by fields
+	 *
+	 * @return method's result (<b><code>null</code></b> if <b><code>void</code></b>) or field's value
+	 * @throws Throwable : any exception of the member or of the arguments' conversion
+	 */
+	protected abstract Object access(int member, Object instance, Object[] args) throws Throwable;
+
+	// Accesses of the members of a fixed arity (fields for access0), only invoked for them.
+	protected Object access0(int member, Object instance) throws Throwable {
+		return access(member, instance, Invoker.NO_ARGS);
+	}
+
+	protected Object access1(int member, Object instance, Object a) throws Throwable {
+		return access(member, instance, new Object[] {a});
+	}
+
+	protected Object access2(int member, Object instance, Object a, Object b) throws Throwable {
+		return access(member, instance, new Object[] {a, b});
+	}
+
+	protected Object access3(int member, Object instance, Object a, Object b, Object c) throws Throwable {
+		return access(member, instance, new Object[] {a, b, c});
+	}
+
+	// Method.invoke() rules: unboxing possibly followed by a widening primitive conversion.
+
+	protected static boolean toBoolean(Object arg) {
+		if (arg instanceof Boolean) return (Boolean)arg;
+		throw new IllegalArgumentException("argument type mismatch");
+	}
+
+	protected static char toChar(Object arg) {
+		if (arg instanceof Character) return (Character)arg;
+		throw new IllegalArgumentException("argument type mismatch");
+	}
+
+	protected static byte toByte(Object arg) {
+		if (arg instanceof Byte) return (Byte)arg;
+		throw new IllegalArgumentException("argument type mismatch");
+	}
+
+	protected static short toShort(Object arg) {
+		if (arg instanceof Short) return (Short)arg;
+		return toByte(arg);
+	}
+
+	protected static int toInt(Object arg) {
+		if (arg instanceof Integer) return (Integer)arg;
+		if (arg instanceof Character) return (Character)arg;
+		return toShort(arg);
+	}
+
+	protected static long toLong(Object arg) {
+		if (arg instanceof Long) return (Long)arg;
+		return toInt(arg);
+	}
+
+	protected static float toFloat(Object arg) {
+		if (arg instanceof Float) return (Float)arg;
+		return toLong(arg);
+	}
+
+	protected static double toDouble(Object arg) {
+		if (arg instanceof Double) return (Double)arg;
+		if (arg instanceof Float) return (Float)arg;
+		return toLong(arg);
+	}
+}
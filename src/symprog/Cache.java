@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoized results of a pure method, keyed by receiver and arguments.<br>
+ * Every method has its own cache holding at most <b><code>symprog.cacheSize</code></b> results
+ * (system property, 0 by default to memoize nothing), the least recently used ones being
+ * evicted first. Arguments are compared by equality, they mustn't be mutated once passed.
+ *
+ * @author Bernard Blaser
+ *
+ */
+final class Cache {
+	static final int SIZE = Integer.getInteger("symprog.cacheSize", 0);
+
+	static final Object MISSING = new Object();
+
+	private final Map<Key, Object> RESULTS = new LinkedHashMap<Key, Object>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {return size() > SIZE;}
+	};
+
+	// Memoized result, MISSING if there is none.
+	synchronized Object get(Object instance, Object[] args) {
+		Key key = new Key(instance, args);
+		Object result = RESULTS.get(key);
+		return result != null || RESULTS.containsKey(key) ? result : MISSING;
+	}
+
+	synchronized void put(Object instance, Object[] args, Object result) {
+		RESULTS.put(new Key(instance, args), result);
+	}
+
+	private static final class Key {
+		private final Object INSTANCE; // Compared by identity
+		private final Object[] ARGS;
+		private final int HASH;
+
+		private Key(Object instance, Object[] args) {
+			INSTANCE = instance;
+			ARGS = args;
+			HASH = 31 * System.identityHashCode(instance) + Arrays.deepHashCode(args);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {return false;}
+
+			Key k = (Key)o;
+			return HASH == k.HASH && INSTANCE == k.INSTANCE && Arrays.deepEquals(ARGS, k.ARGS);
+		}
+
+		@Override
+		public int hashCode() {return HASH;}
+	}
+}
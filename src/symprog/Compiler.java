@@ -0,0 +1,237 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.lang.invoke.*;
+
+import symprog.MethodSymbol.ExpressionSymbol;
+
+/**
+ * Compilation of terms into method handle trees.<br>
+ * Every term is compiled into a <code>(Object instance, Environment env)Object</code> handle
+ * equivalent to its evaluation: symbols become direct invocations of their members and expressions feed them
+ * with their compiled arguments, so that the JIT can turn a whole tree into straight code.
+ * Terms that can't be compiled (unresolved symbols, unknown kinds of terms) are interpreted.
+ *
+ * @author Bernard Blaser
+ *
+ */
+final class Compiler {
+	private static final MethodHandle INTERPRET, FAIL;
+
+	// Conversions of evaluations to primitives, following the Method.invoke() rules.
+	static final MethodHandle TO_DOUBLE = unboxing(double.class), TO_LONG = unboxing(long.class),
+			TO_INT = unboxing(int.class);
+
+	static {
+		MethodHandles.Lookup lookup = MethodHandles.lookup();
+		try {
+			INTERPRET = lookup.findVirtual(Term.class, "interpret",
+					MethodType.methodType(Object.class, Object.class, Environment.class));
+			FAIL = lookup.findStatic(Compiler.class, "fail", MethodType.methodType(Object.class,
+					Invoker.class, boolean.class, Throwable.class, Object.class, Object[].class));
+		}
+		catch (ReflectiveOperationException e) {throw new ExceptionInInitializerError(e);}
+	}
+
+	private Compiler() {}
+
+	private static MethodHandle unboxing(Class<?> type) {
+		return MethodHandles.identity(Object.class).asType(MethodType.methodType(type, Object.class));
+	}
+
+	static MethodHandle constant(Object value) {
+		return MethodHandles.dropArguments(MethodHandles.constant(Object.class, value), 0,
+				Object.class, Environment.class);
+	}
+
+	static MethodHandle interpreted(Term t) {
+		return INTERPRET.bindTo(t);
+	}
+
+	// Evaluates the given handle on a fixed instance.
+	static MethodHandle bound(MethodHandle h, Object instance) {
+		return MethodHandles.dropArguments(MethodHandles.insertArguments(h, 0, instance), 0, Object.class);
+	}
+
+	// Converts the result of a handle as reflection does, for primitive types.
+	static MethodHandle convert(MethodHandle h, Class<?> type) {
+		return h.asType(h.type().changeReturnType(type));
+	}
+
+	/**
+	 * Compiles the invocation of a symbol's member.<br>
+	 * Arguments whose terms give values of the exact primitive type of their parameter are passed
+	 * unboxed, the other ones are converted as by reflection.
+	 *
+	 * @param symbol : invoked symbol, interpreted if its member can't be directly invoked
+	 * @param type : result's type, <b><code>Object</code></b> or a primitive one
+	 * @param arguments : argument terms, evaluated from left to right
+	 *
+	 * @return <code>(Object instance, Environment env)type</code> handle
+	 */
+	static MethodHandle invocation(Symbol<?> symbol, Class<?> type, Term... arguments) {
+		Invoker invoker;
+		try {
+			invoker = symbol.invoker();
+		}
+		catch (Exception e) {return convert(interpreted(symbol), type);} // Fails at evaluation, as interpreted.
+
+		MethodHandle target = invoker.exact();
+		if (target == null || target.type().parameterCount() != arguments.length + 1)
+			return convert(interpreted(symbol), type);
+
+		MethodHandle[] handles = new MethodHandle[arguments.length];
+		Class<?>[] types = new Class<?>[arguments.length];
+		for (int i=0; i<arguments.length; i++) {
+			Term t = arguments[i];
+			Class<?> param = target.type().parameterType(i + 1);
+
+			if (t.quoted)
+				handles[i] = constant(t.unquote());
+			else
+				handles[i] = t.primitive() == param ? t.handle(param) : t.handle();
+			types[i] = handles[i].type().returnType();
+		}
+
+		try {
+			target = target.asType(MethodType.methodType(type, Object.class, types));
+		}
+		catch (WrongMethodTypeException e) {return convert(interpreted(symbol), type);}
+
+		MethodHandle fail = MethodHandles.insertArguments(FAIL, 0, invoker, symbol instanceof ExpressionSymbol)
+				.asCollector(Object[].class, arguments.length)
+				.asType(target.type().insertParameterTypes(0, Throwable.class));
+		target = MethodHandles.catchException(target, Throwable.class, fail);
+
+		// Folds the arguments one by one from the last to the first one, the resulting handle
+		// successively takes (instance, env, a1, ..., ak) and evaluates a(k+1) before the others.
+		target = MethodHandles.dropArguments(target, 1, Environment.class);
+		for (int k=arguments.length-1; k>=0; k--) {
+			int[] reorder = new int[k + 3];
+			reorder[0] = 1;
+			reorder[1] = 2;
+			for (int i=1; i<=k; i++) {reorder[i + 1] = i + 2;}
+			reorder[k + 2] = 0;
+
+			MethodType evaluated = target.type(); // (instance, env, a1, ..., a(k+1))
+			MethodHandle next = MethodHandles.permuteArguments(target, evaluated.dropParameterTypes(k + 2, k + 3)
+					.insertParameterTypes(0, evaluated.parameterType(k + 2)), reorder);
+			MethodHandle argument = MethodHandles.dropArguments(handles[k], 2,
+					evaluated.parameterList().subList(2, k + 2));
+			target = MethodHandles.foldArguments(next, argument);
+		}
+		return target;
+	}
+
+	// Reports the failure of an invocation the same way the interpreter does.
+	private static Object fail(Invoker invoker, boolean expression, Throwable t, Object instance, Object[] args) {
+		try {
+			throw new SymbolicException(invoker.failure(t, instance, args));
+		}
+		catch (IllegalArgumentException e) {
+			throw expression ? ExpressionSymbol.mismatch(invoker, args, e) : new SymbolicException(e);
+		}
+		catch (NullPointerException e) {throw new SymbolicException(e);}
+	}
+
+	/**
+	 * Compiled term, a snapshot of its source: later mutations of the source aren't taken into
+	 * account and it has no terms of its own to be mutated.<br>
+	 * Sources of a primitive type are evaluated without boxing through their exact handle.
+	 */
+	static final class Compiled extends Term {
+		private final Term SOURCE;
+		private final long VERSION;
+		private final Class<?> TYPE;
+		private final MethodHandle HANDLE, EXACT; // (Object, Environment)Object and (Object, Environment)TYPE
+
+		Compiled(Term source) {
+			SOURCE = source;
+			VERSION = source.terms().version();
+			TYPE = source.primitive();
+			EXACT = TYPE != null ? source.handle(TYPE) : null;
+			HANDLE = TYPE != null ? convert(EXACT, Object.class) : source.handle();
+		}
+
+		// Source tree's version at compilation.
+		long version() {return VERSION;}
+
+		@Override
+		public Object evaluate(Object instance) throws SymbolicException {
+			return evaluate(instance, null);
+		}
+
+		@Override
+		public Object evaluate(Object instance, Environment env) throws SymbolicException {
+			if (quoted) {return this;}
+
+			try {
+				return (Object)HANDLE.invokeExact(instance, env);
+			}
+			catch (RuntimeException | Error e) {throw e;}
+			catch (Throwable t) {throw new SymbolicException(t);}
+		}
+
+		@Override
+		public double evaluateAsDouble(Object instance, Environment env) throws SymbolicException {
+			if (quoted || TYPE != double.class) {return super.evaluateAsDouble(instance, env);}
+
+			try {
+				return (double)EXACT.invokeExact(instance, env);
+			}
+			catch (RuntimeException | Error e) {throw e;}
+			catch (Throwable t) {throw new SymbolicException(t);}
+		}
+
+		@Override
+		public long evaluateAsLong(Object instance, Environment env) throws SymbolicException {
+			if (quoted || TYPE != long.class) {return super.evaluateAsLong(instance, env);}
+
+			try {
+				return (long)EXACT.invokeExact(instance, env);
+			}
+			catch (RuntimeException | Error e) {throw e;}
+			catch (Throwable t) {throw new SymbolicException(t);}
+		}
+
+		@Override
+		public int evaluateAsInt(Object instance, Environment env) throws SymbolicException {
+			if (quoted || TYPE != int.class) {return super.evaluateAsInt(instance, env);}
+
+			try {
+				return (int)EXACT.invokeExact(instance, env);
+			}
+			catch (RuntimeException | Error e) {throw e;}
+			catch (Throwable t) {throw new SymbolicException(t);}
+		}
+
+		@Override
+		public Term compile() {return this;}
+
+		@Override
+		Class<?> primitive() {return quoted ? null : TYPE;}
+
+		@Override
+		MethodHandle handle() {return quoted ? constant(this) : HANDLE;}
+
+		@Override
+		MethodHandle handle(Class<?> type) {return !quoted && type == TYPE ? EXACT : super.handle(type);}
+
+		@Override
+		public String toString() {return quoted ? "'" + SOURCE : SOURCE.toString();}
+	}
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+/**
+ * Symbolic view of methods taking and returning only <b><code>double</code></b> values.<br>
+ * Trees made of such symbols pass their values unboxed from node to node once compiled,
+ * see {@link Term#evaluateAsDouble}.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public class DoubleMethodSymbol extends MethodSymbol {
+	public DoubleMethodSymbol(String class_name, String name, String[] params) {
+		this(class_name, name, params, false);
+	}
+
+	public DoubleMethodSymbol(String class_name, String name, String[] params, boolean pure) {
+		super(class_name, name, params, pure, double.class);
+	}
+
+	public DoubleMethodSymbol(Class<?> clazz, String name, Class<?>[] params, boolean pure, Accessor accessor, int index) {
+		super(clazz, name, params, pure, double.class, accessor, index);
+	}
+}
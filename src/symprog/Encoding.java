@@ -0,0 +1,224 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import symprog.MethodSymbol.BoundMethodSymbol;
+import symprog.MethodSymbol.ExpressionSymbol;
+
+/**
+ * Compact encoding of trees, for large populations of them.<br>
+ * A tree is encoded as an <b><code>int[]</code></b> of its nodes in prefix order, each one
+ * being its kind along with the index of its symbol in a table shared by all the trees of this
+ * encoding (or of its value in a pool of constants). Encoded trees can be evaluated as is or
+ * decoded back to terms, sharing their symbols and constants.<br>
+ * Encoded trees are evaluated sequentially by a simple interpreter (neither compiled, nor
+ * memoized, nor incremental). Trees of any depth are encoded, decoded and evaluated without
+ * recursion. Encodings can be used concurrently, except while encoding.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public final class Encoding {
+	private static final int CONSTANT = 0, LEAF = 1, EXPRESSION = 2; // Kinds of the nodes
+	private static final int KIND_BITS = 2, KIND_MASK = (1 << KIND_BITS) - 1;
+
+	private final Table<Term> CONSTANTS = new Table<>(); // Values and quoted terms
+	private final Table<Term> LEAVES = new Table<>(); // Other terms without terms
+	private final Table<BoundMethodSymbol> HEADS = new Table<>(); // Symbols of the expressions
+	private int[] arities = new int[0]; // Of the expressions, by head
+
+	public synchronized int[] encode(Term t) throws SymbolicException {
+		IntStream.Builder code = IntStream.builder();
+		// Expressions are encoded when entered, before their terms.
+		new ExpressionSymbol.Traversal<Term>(Term[]::new) {
+			@Override
+			Term leaf(Term t, Object instance) {
+				code.add(node(t));
+				return t;
+			}
+
+			@Override
+			Term enter(ExpressionSymbol e, Object instance) {
+				if (e.quoted) {return leaf(e, instance);}
+
+				int arity = e.terms().size();
+				BoundMethodSymbol head = e.head();
+				int index = HEADS.index(Arrays.asList(head, arity), head);
+				if (index == arities.length) {arities = Arrays.copyOf(arities, 2 * index + 1);}
+				arities[index] = arity;
+
+				code.add(index << KIND_BITS | EXPRESSION);
+				return null;
+			}
+
+			@Override
+			Term exit(ExpressionSymbol e, Object instance, Term[] terms) {return e;}
+		}.apply(t, null);
+		return code.build().toArray();
+	}
+
+	// Node of a term that isn't an expression.
+	private int node(Term t) {
+		if (t.quoted || t instanceof Value) {
+			// Quoted trees are mutable through their original, so they're only shared as is.
+			// Equal values of mutable objects aren't merged, as they might be told apart.
+			boolean pooled = t instanceof Value ? ((Value)t).immutable() : t.atomic();
+			return CONSTANTS.index(pooled ? t : new Identity(t), t) << KIND_BITS | CONSTANT;
+		}
+		return LEAVES.index(t, t) << KIND_BITS | LEAF;
+	}
+
+	public Term decode(int[] code) throws SymbolicException {
+		// Expressions whose terms are being decoded, without recursion.
+		Deque<Node> nodes = new ArrayDeque<>();
+		for (int cursor=0; ; ) {
+			int node = code[cursor++], index = node >>> KIND_BITS;
+			Term t;
+			switch (node & KIND_MASK) {
+				case CONSTANT: t = CONSTANTS.get(index); break;
+				case LEAF: t = LEAVES.get(index); break;
+				default:
+					Node n = new Node(HEADS.get(index), null, new Term[arities[index]]);
+					if (n.TERMS.length > 0) {
+						nodes.push(n);
+						continue;
+					}
+					t = n.HEAD.build();
+			}
+
+			// The expressions completed by this term are built.
+			while (true) {
+				if (nodes.isEmpty()) {return t;}
+
+				Node n = nodes.peek();
+				n.TERMS[n.next++] = t;
+				if (n.next < n.TERMS.length) {break;}
+
+				nodes.pop();
+				t = n.HEAD.build((Term[])n.TERMS);
+			}
+		}
+	}
+
+	public Object evaluate(int[] code, Object instance, Environment env) throws SymbolicException {
+		// Expressions whose arguments are being evaluated, without recursion.
+		Deque<Node> nodes = new ArrayDeque<>();
+		for (int cursor=0; ; ) {
+			int node = code[cursor++], index = node >>> KIND_BITS;
+			Object current = nodes.isEmpty() ? instance : nodes.peek().INSTANCE, value;
+			switch (node & KIND_MASK) {
+				case CONSTANT:
+					// Quoted terms are passed unquoted to the functions.
+					Term c = CONSTANTS.get(index);
+					value = !nodes.isEmpty() && c.quoted ? c.unquote() : c.evaluate(current);
+					break;
+				case LEAF: value = LEAVES.get(index).evaluate(current, env); break;
+				default:
+					BoundMethodSymbol head = HEADS.get(index);
+					Node n = new Node(head, head.BOUND ? head.INSTANCE : current, new Object[arities[index]]);
+					if (n.TERMS.length > 0) {
+						nodes.push(n);
+						continue;
+					}
+					value = n.invoke();
+			}
+
+			// The expressions completed by this argument are invoked.
+			while (true) {
+				if (nodes.isEmpty()) {return value;}
+
+				Node n = nodes.peek();
+				n.TERMS[n.next++] = value;
+				if (n.next < n.TERMS.length) {break;}
+
+				nodes.pop();
+				value = n.invoke();
+			}
+		}
+	}
+
+	public Object evaluate(int[] code, Environment env) throws SymbolicException {
+		return evaluate(code, null, env);
+	}
+
+	// Expression being decoded or evaluated.
+	private static final class Node {
+		private final BoundMethodSymbol HEAD;
+		private final Object INSTANCE; // Bound one, if evaluated
+		private final Object[] TERMS; // Decoded terms or evaluated arguments
+		private int next;
+
+		private Node(BoundMethodSymbol head, Object instance, Object[] terms) {
+			HEAD = head;
+			INSTANCE = instance;
+			TERMS = terms;
+		}
+
+		private Object invoke() throws SymbolicException {
+			Invoker invoker = null;
+			try {
+				invoker = HEAD.invoker();
+				return invoker.invoke(INSTANCE, TERMS);
+			}
+			catch (IllegalArgumentException e) {throw ExpressionSymbol.mismatch(invoker, TERMS, e);}
+			catch (Exception e) {throw new SymbolicException(e);}
+		}
+	}
+
+	// Number of symbols and constants of the encoded trees.
+	public synchronized int size() {return CONSTANTS.size() + LEAVES.size() + HEADS.size();}
+
+	private static final class Table<T> {
+		private final java.util.List<T> ENTRIES = new ArrayList<>();
+		private final Map<Object, Integer> INDEXES = new HashMap<>();
+
+		// Index of the keyed entry, added if needed.
+		int index(Object key, T entry) {
+			Integer index = INDEXES.get(key);
+			if (index == null) {
+				index = ENTRIES.size();
+				ENTRIES.add(entry);
+				INDEXES.put(key, index);
+			}
+			return index;
+		}
+
+		T get(int index) {return ENTRIES.get(index);}
+
+		int size() {return ENTRIES.size();}
+	}
+
+	// Key of an object compared by identity.
+	private static final class Identity {
+		private final Object OBJECT;
+
+		private Identity(Object object) {OBJECT = object;}
+
+		@Override
+		public boolean equals(Object o) {return o instanceof Identity && ((Identity)o).OBJECT == OBJECT;}
+
+		@Override
+		public int hashCode() {return System.identityHashCode(OBJECT);}
+	}
+}
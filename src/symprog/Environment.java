@@ -0,0 +1,289 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.lang.invoke.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Symbolic expression's evaluation environment: values of the variables of a scope.<br>
+ * Variables are resolved to slots once, when they're declared, and read by index during
+ * evaluation. Since bindings live in environments rather than in shared instances, the same
+ * tree can be evaluated concurrently for as many bindings as needed (one environment each).<br>
+ * Environments of a private scope (see {@link Forest}) read the variables of its parent scope
+ * in a parent environment, which they don't modify.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public final class Environment {
+	private static final Object UNBOUND = new Object();
+
+	private final Scope SCOPE;
+	private final Environment PARENT; // Of the parent scope, if any
+	private Object[] values;
+	private long version; // Changed by every binding
+
+	private Environment(Scope scope, Environment parent) {
+		SCOPE = scope;
+		PARENT = parent;
+		values = new Object[scope.size()];
+		Arrays.fill(values, UNBOUND);
+	}
+
+	public Environment set(Variable v, Object value) throws SymbolicException {
+		check(v);
+		if (v.SLOT >= values.length) { // Declared after this environment's creation
+			int length = values.length;
+			values = Arrays.copyOf(values, SCOPE.size());
+			Arrays.fill(values, length, values.length, UNBOUND);
+		}
+		values[v.SLOT] = value;
+		version++;
+		return this;
+	}
+
+	public Object get(Variable v) throws SymbolicException {
+		if (v.SCOPE != SCOPE && PARENT != null) {return PARENT.get(v);}
+
+		check(v);
+		Object value = v.SLOT < values.length ? values[v.SLOT] : UNBOUND;
+		if (value == UNBOUND)
+			throw new SymbolicException("unbound variable " + v.NAME);
+
+		return value;
+	}
+
+	// Versions only increase, so their sum changes with any binding of this environment or its parent.
+	long version() {return PARENT != null ? version + PARENT.version() : version;}
+
+	// Whether the variable has a value in this environment.
+	boolean bound(Variable v) {
+		if (v.SCOPE != SCOPE) {return PARENT != null && PARENT.bound(v);}
+
+		return v.SLOT < values.length && values[v.SLOT] != UNBOUND;
+	}
+
+	private void check(Variable v) throws SymbolicException {
+		if (v.SCOPE != SCOPE)
+			throw new SymbolicException("variable " + v.NAME + " out of scope");
+	}
+
+	/**
+	 * Declarations of variables.
+	 */
+	public static final class Scope {
+		private final java.util.List<Variable> VARIABLES = new ArrayList<>();
+		private final Scope PARENT; // Whose variables are visible in this one, if any
+
+		public Scope() {this(null);}
+
+		// Private scope whose environments see the variables of the given one.
+		Scope(Scope parent) {PARENT = parent;}
+
+		// Declares the named variable if not already done.
+		public synchronized Variable variable(String name) {
+			for (Variable v: VARIABLES) {
+				if (v.NAME.equals(name)) {return v;}
+			}
+			Variable v = new Variable(this, name, VARIABLES.size());
+			VARIABLES.add(v);
+			return v;
+		}
+
+		public synchronized int size() {return VARIABLES.size();}
+
+		// New environment where all the variables are unbound.
+		public Environment environment() {return new Environment(this, null);}
+
+		// New environment of this private scope, the other variables being read in the given one.
+		Environment environment(Environment parent) throws SymbolicException {
+			if (parent.SCOPE != PARENT)
+				throw new SymbolicException("environment out of scope");
+
+			return new Environment(this, parent);
+		}
+
+		// New batch of the given number of rows where all the variables are unbound.
+		public Batch batch(int size) {return new Batch(this, size, null);}
+
+		// New batch of this private scope, the other variables being read in the given one.
+		Batch batch(Batch parent) throws SymbolicException {
+			if (parent.SHARED.SCOPE != PARENT)
+				throw new SymbolicException("batch out of scope");
+
+			return new Batch(this, parent.SIZE, parent);
+		}
+	}
+
+	/**
+	 * Batch of environments given by columns of values, evaluated all at once by
+	 * {@link Term#evaluateBatch}. Variables are bound either to a column (one value per row) or
+	 * to a single value shared by all the rows. Columns of doubles are kept unboxed.
+	 */
+	public static final class Batch {
+		private final Environment SHARED;
+		private final int SIZE;
+		private final Batch PARENT; // Of the parent scope, if any
+		private Object[] columns; // Object[] or unboxed double[] columns
+
+		private Batch(Scope scope, int size, Batch parent) {
+			SHARED = new Environment(scope, parent != null ? parent.SHARED : null);
+			SIZE = size;
+			PARENT = parent;
+			columns = new Object[scope.size()];
+		}
+
+		public int size() {return SIZE;}
+
+		public Batch set(Variable v, double[] column) throws SymbolicException {
+			return set(v, column, column.length);
+		}
+
+		public Batch set(Variable v, Object[] column) throws SymbolicException {
+			return set(v, column, column.length);
+		}
+
+		private Batch set(Variable v, Object column, int length) throws SymbolicException {
+			SHARED.check(v);
+			if (length != SIZE)
+				throw new SymbolicException("column of " + length + " values for " + SIZE + " rows");
+
+			if (v.SLOT >= columns.length) {columns = Arrays.copyOf(columns, SHARED.SCOPE.size());}
+			columns[v.SLOT] = column;
+			return this;
+		}
+
+		public Batch set(Variable v, Object value) throws SymbolicException {
+			SHARED.set(v, value);
+			if (v.SLOT < columns.length) {columns[v.SLOT] = null;}
+			return this;
+		}
+
+		/**
+		 * Values of a variable, a single one if it's the same for all the rows.
+		 */
+		Object[] column(Variable v) throws SymbolicException {
+			return boxed(values(v));
+		}
+
+		// Values of a variable as by column(), but unboxed if they were given so.
+		Object values(Variable v) throws SymbolicException {
+			if (v.SCOPE != SHARED.SCOPE && PARENT != null) {return PARENT.values(v);}
+
+			Object column = v.SLOT < columns.length ? columns[v.SLOT] : null;
+			return column != null ? column : new Object[] {SHARED.get(v)};
+		}
+
+		// Boxes the values of an unboxed column.
+		static Object[] boxed(Object column) {
+			if (column instanceof Object[]) {return (Object[])column;}
+
+			double[] values = (double[])column;
+			Object[] boxed = new Object[values.length];
+			for (int i=0; i<boxed.length; i++) {boxed[i] = values[i];}
+			return boxed;
+		}
+
+		// Environment of a row, for terms evaluated row by row.
+		Environment row(int i) throws SymbolicException {
+			Environment env = new Environment(SHARED.SCOPE, PARENT != null ? PARENT.row(i) : null);
+			System.arraycopy(SHARED.values, 0, env.values, 0, Math.min(SHARED.values.length, env.values.length));
+			for (int slot=0; slot<columns.length; slot++) {
+				if (columns[slot] instanceof double[])
+					env.values[slot] = ((double[])columns[slot])[i];
+				else if (columns[slot] != null)
+					env.values[slot] = ((Object[])columns[slot])[i];
+			}
+			return env;
+		}
+	}
+
+	/**
+	 * Variable, evaluated to its value in the evaluation environment.
+	 */
+	public static final class Variable extends Term {
+		private static final MethodHandle READ;
+
+		static {
+			try {
+				READ = MethodHandles.lookup().findStatic(Variable.class, "read",
+						MethodType.methodType(Object.class, Variable.class, Environment.class));
+			}
+			catch (ReflectiveOperationException e) {throw new ExceptionInInitializerError(e);}
+		}
+
+		private final Scope SCOPE;
+		private final String NAME;
+		private final int SLOT;
+
+		private Variable(Scope scope, String name, int slot) {
+			SCOPE = scope;
+			NAME = name;
+			SLOT = slot;
+		}
+
+		public String name() {return NAME;}
+
+		@Override
+		public Object evaluate(Object instance) throws SymbolicException {
+			return evaluate(instance, null);
+		}
+
+		@Override
+		public Object evaluate(Object instance, Environment env) throws SymbolicException {
+			if (quoted) {return this;}
+
+			return read(this, env);
+		}
+
+		private static Object read(Variable v, Environment env) throws SymbolicException {
+			if (env == null)
+				throw new SymbolicException("unbound variable " + v.NAME);
+
+			return env.get(v);
+		}
+
+		@Override
+		public Term fold(Object instance, Environment env) throws SymbolicException {
+			return !quoted && env != null && env.bound(this) ? new Value(env.get(this)) : this;
+		}
+
+		@Override
+		int weight() {return 1;}
+
+		@Override
+		MethodHandle handle() {
+			if (quoted) {return Compiler.constant(this);}
+
+			return MethodHandles.dropArguments(READ.bindTo(this), 0, Object.class);
+		}
+
+		@Override
+		Object[] evaluateColumn(Object instance, Batch batch) throws SymbolicException {
+			return quoted ? new Object[] {this} : batch.column(this);
+		}
+
+		@Override
+		Object evaluateUnboxed(Object instance, Batch batch) throws SymbolicException {
+			return quoted ? new Object[] {this} : batch.values(this);
+		}
+
+		@Override
+		public String toString() {return quoted ? "'" + NAME : NAME;}
+	}
+}
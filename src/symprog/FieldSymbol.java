@@ -15,6 +15,7 @@
  */
 package symprog;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.*;
 
 /**
@@ -27,10 +28,25 @@ public class FieldSymbol extends Symbol<Field> {
 	public FieldSymbol(String class_name, String name) {
 		super(class_name, name);
 	}
+
+	/**
+	 * @param clazz : field's class, given by a constant rather than by name
+	 * @param accessor : direct access to the field generated by {@link SymProc} (nested in its
+	 * class), <b><code>null</code></b> if none
+	 * @param index : field's index in the accessor
+	 */
+	public FieldSymbol(Class<?> clazz, String name, Accessor accessor, int index) {
+		this(Descriptor.<Field>of(clazz, name, null, false, null));
+		DESCRIPTOR.access(accessor, index);
+	}
+
+	private FieldSymbol(Descriptor<Field> descriptor) {
+		super(descriptor);
+	}
 	
 	@Override
 	public Field reflect() throws ClassNotFoundException, NoSuchFieldException {
-		return Class.forName(CLASS_NAME).getDeclaredField(NAME);
+		return DESCRIPTOR.declaringClass().getDeclaredField(DESCRIPTOR.NAME);
 	}
 
 	@Override
@@ -38,22 +54,49 @@ public class FieldSymbol extends Symbol<Field> {
 		if (quoted) {return this;}
 
 		try {
-			Field f = reflect();
-			f.setAccessible(true);
-			return f.get(instance);
+			return invoker().invoke0(instance);
 		}
 		catch (Exception e) {throw new SymbolicException(e);}
 	}
 
+	// Final fields are folded, if static or bound.
+	@Override
+	public Term fold(Object instance, Environment env) throws SymbolicException {
+		if (quoted) {return this;}
+
+		try {
+			int modifiers = resolve().getModifiers();
+			boolean constant = Modifier.isFinal(modifiers) &&
+					(Modifier.isStatic(modifiers) || this instanceof BoundFieldSymbol);
+
+			return constant ? new Value(evaluate(instance)) : this;
+		}
+		catch (ReflectiveOperationException | SymbolicException e) {return this;}
+	}
+
+	// Fields that aren't final may change between evaluations, as if they had side effects.
+	@Override
+	int weight() {
+		if (quoted) {return 1;}
+
+		try {
+			return Modifier.isFinal(resolve().getModifiers()) ? 1 : -1;
+		}
+		catch (ReflectiveOperationException e) {return -1;}
+	}
+
+	@Override
+	MethodHandle handle() {return quoted ? Compiler.constant(this) : Compiler.invocation(this, Object.class);}
+
 	public BoundFieldSymbol bind(Object instance) {
-		return new BoundFieldSymbol(CLASS_NAME, NAME, instance);
+		return new BoundFieldSymbol(DESCRIPTOR, instance);
 	}
 
 	public static class BoundFieldSymbol extends FieldSymbol {
 		private final Object INSTANCE;
 
-		private BoundFieldSymbol(String class_name, String name, Object instance) {
-			super(class_name, name);
+		private BoundFieldSymbol(Descriptor<Field> descriptor, Object instance) {
+			super(descriptor);
 			INSTANCE = instance;
 		}
 
@@ -62,9 +105,20 @@ public class FieldSymbol extends Symbol<Field> {
 			return super.evaluate(INSTANCE);
 		}
 
+		@Override
+		MethodHandle handle() {return Compiler.bound(super.handle(), INSTANCE);}
+
+		@Override
+		public boolean equals(Object o) {
+			return super.equals(o) && INSTANCE == ((BoundFieldSymbol)o).INSTANCE;
+		}
+
+		@Override
+		public int hashCode() {return 31 * super.hashCode() + System.identityHashCode(INSTANCE);}
+
 		@Override
 		public String toString() {
-			String name = "@" + NAME;
+			String name = "@" + DESCRIPTOR.NAME;
 			return quoted ? "'" + name : name;
 		}
 	}
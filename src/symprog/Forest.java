@@ -0,0 +1,195 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import symprog.MethodSymbol.ExpressionSymbol;
+
+/**
+ * Trees evaluated together, their common subtrees being evaluated only once per evaluation.<br>
+ * Structurally equal subtrees (see {@link Interner}) free of side effects that appear more than
+ * once, in the same tree or in several ones, are replaced by temporary variables named
+ * <b><code>#0</code></b>, <b><code>#1</code></b>... declared in a private scope of the forest,
+ * so they never collide with the variables of the trees nor with the ones of other forests.
+ * They're bound to the evaluations of the shared subtrees in a private environment (or batch)
+ * extending the one of each evaluation, before the trees are evaluated.<br>
+ * The given trees mustn't be mutated as long as the forest is used.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public final class Forest {
+	private final Environment.Scope SCOPE;
+	private final Environment.Scope TEMPORARIES; // Private scope of the variables below
+	private final Term[] TREES; // Shared subtrees replaced by their variables
+	private final Environment.Variable[] VARIABLES;
+	private final Term[] SHARED; // Definitions of the variables, after the ones they depend on
+
+	public Forest(Environment.Scope scope, Term... trees) throws SymbolicException {
+		Interner interner = new Interner();
+		Map<Term, Integer> occurrences = new IdentityHashMap<>();
+		Term[] interned = new Term[trees.length];
+		for (int i=0; i<trees.length; i++) {
+			interned[i] = interner.intern(trees[i]);
+			count(interned[i], true, occurrences);
+		}
+
+		Map<Term, Environment.Variable> variables = new IdentityHashMap<>();
+		java.util.List<Term> shared = new ArrayList<>();
+		SCOPE = scope;
+		TEMPORARIES = new Environment.Scope(scope);
+		TREES = new Term[trees.length];
+		for (int i=0; i<trees.length; i++) {
+			TREES[i] = share(interned[i], true, occurrences, variables, shared);
+		}
+
+		SHARED = shared.toArray(new Term[shared.size()]);
+		VARIABLES = new Environment.Variable[SHARED.length];
+		for (int i=0; i<VARIABLES.length; i++) {VARIABLES[i] = TEMPORARIES.variable("#" + i);}
+	}
+
+	// Trees with their shared subtrees replaced by variables.
+	public Term[] trees() {return TREES.clone();}
+
+	// Number of shared subtrees.
+	public int shared() {return SHARED.length;}
+
+	/**
+	 * Whether the subtree can be shared: it mustn't have side effects and it's evaluated with
+	 * the instance given to the forest, unless it's bound.
+	 */
+	private static boolean shareable(Term t, boolean free) {
+		return t instanceof ExpressionSymbol && !t.quoted && (free || ((ExpressionSymbol)t).BOUND) &&
+				t.weight() >= 0;
+	}
+
+	// Counts the occurrences of the shareable subtrees, the ones of a repeated subtree only once.
+	private static void count(Term t, boolean free, Map<Term, Integer> occurrences) {
+		// Terms still to count along with their freedom, without recursion.
+		Deque<Object> pending = new ArrayDeque<>();
+		pending.push(free);
+		pending.push(t);
+		while (!pending.isEmpty()) {
+			t = (Term)pending.pop();
+			free = (Boolean)pending.pop();
+			if (t.quoted) {continue;}
+			if (shareable(t, free) && occurrences.merge(t, 1, Integer::sum) > 1) {continue;}
+
+			// Terms of bound expressions are evaluated with their instance.
+			boolean bound = t instanceof ExpressionSymbol && ((ExpressionSymbol)t).BOUND;
+			for (Term term: t.terms().array()) {
+				pending.push(free && !bound);
+				pending.push(term);
+			}
+		}
+	}
+
+	private Term share(Term t, boolean free, Map<Term, Integer> occurrences,
+			Map<Term, Environment.Variable> variables, java.util.List<Term> shared) throws SymbolicException {
+		// The context of the traversal is the freedom of the terms.
+		return new ExpressionSymbol.Traversal<Term>(Term[]::new) {
+			private boolean repeated(ExpressionSymbol e, Object free) {
+				return shareable(e, (Boolean)free) && occurrences.get(e) > 1;
+			}
+
+			@Override
+			Term leaf(Term t, Object free) {return t;}
+
+			@Override
+			Term enter(ExpressionSymbol e, Object free) {
+				if (e.quoted) {return e;}
+
+				return repeated(e, free) ? variables.get(e) : null;
+			}
+
+			@Override
+			Object inner(ExpressionSymbol e, Object free) {
+				return ((Boolean)free || repeated(e, free)) && !e.BOUND;
+			}
+
+			@Override
+			Term exit(ExpressionSymbol e, Object free, Term[] rebuilt) throws SymbolicException {
+				Term[] terms = e.terms().array();
+				boolean changed = false;
+				for (int i=0; i<terms.length; i++) {changed |= rebuilt[i] != terms[i];}
+
+				Term definition = changed ? e.rebuild(rebuilt) : e;
+				if (!repeated(e, free)) {return definition;}
+
+				Environment.Variable v = TEMPORARIES.variable("#" + shared.size());
+				variables.put(e, v);
+				shared.add(definition);
+				return v;
+			}
+		}.apply(t, free);
+	}
+
+	/**
+	 * Evaluates the trees in the given environment (possibly null if they have no variables),
+	 * extended by the temporary variables.
+	 */
+	public Object[] evaluate(Object instance, Environment env) throws SymbolicException {
+		env = TEMPORARIES.environment(env != null ? env : SCOPE.environment());
+
+		for (int i=0; i<SHARED.length; i++) {
+			env.set(VARIABLES[i], SHARED[i].evaluate(instance, env));
+		}
+		Object[] results = new Object[TREES.length];
+		for (int i=0; i<TREES.length; i++) {
+			results[i] = TREES[i].evaluate(instance, env);
+		}
+		return results;
+	}
+
+	public Object[] evaluate(Environment env) throws SymbolicException {
+		return evaluate(null, env);
+	}
+
+	/**
+	 * Evaluates the trees for every row of the batch (see {@link Term#evaluateBatch}), extended
+	 * by the temporary variables.
+	 */
+	public double[][] evaluateBatch(Object instance, Environment.Batch batch) throws SymbolicException {
+		batch = TEMPORARIES.batch(batch);
+		for (int i=0; i<SHARED.length; i++) {
+			Object unboxed = SHARED[i].evaluateUnboxed(instance, batch);
+			if (unboxed instanceof double[] && ((double[])unboxed).length > 1) {
+				batch.set(VARIABLES[i], (double[])unboxed);
+				continue;
+			}
+
+			Object[] column = Environment.Batch.boxed(unboxed);
+			if (column.length == 1)
+				batch.set(VARIABLES[i], column[0]);
+			else
+				batch.set(VARIABLES[i], column);
+		}
+		double[][] results = new double[TREES.length][];
+		for (int i=0; i<TREES.length; i++) {
+			results[i] = TREES[i].evaluateBatch(instance, batch);
+		}
+		return results;
+	}
+
+	public double[][] evaluateBatch(Environment.Batch batch) throws SymbolicException {
+		return evaluateBatch(null, batch);
+	}
+}
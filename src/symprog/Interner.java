@@ -0,0 +1,74 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import symprog.MethodSymbol.ExpressionSymbol;
+
+/**
+ * Hash-consing of terms: structurally equal trees are interned as a single one, whose subtrees
+ * are shared as well.<br>
+ * Interned trees are shared by all the trees they've been interned for, they mustn't be
+ * mutated. They're only weakly referenced by the table.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public final class Interner {
+	private final Map<Term, WeakReference<Term>> TERMS = new WeakHashMap<>();
+
+	/**
+	 * Returns the interned tree equal to the given one, which is interned itself if its
+	 * subtrees already are, or rebuilt from the interned subtrees otherwise.
+	 */
+	public synchronized Term intern(Term t) throws SymbolicException {
+		return new ExpressionSymbol.Traversal<Term>(Term[]::new) {
+			@Override
+			Term leaf(Term t, Object instance) {
+				Term interned = interned(t);
+				return interned != null ? interned : add(t);
+			}
+
+			@Override
+			Term enter(ExpressionSymbol e, Object instance) {return interned(e);}
+
+			@Override
+			Term exit(ExpressionSymbol e, Object instance, Term[] shared) throws SymbolicException {
+				Term[] terms = e.terms().array();
+				boolean rebuilt = false;
+				for (int i=0; i<terms.length; i++) {rebuilt |= shared[i] != terms[i];}
+
+				return add(rebuilt ? e.rebuild(shared) : e);
+			}
+		}.apply(t, null);
+	}
+
+	// Interned tree equal to the given one, null if none.
+	private Term interned(Term t) {
+		WeakReference<Term> ref = TERMS.get(t);
+		return ref != null ? ref.get() : null;
+	}
+
+	private Term add(Term t) {
+		TERMS.put(t, new WeakReference<>(t));
+		return t;
+	}
+
+	public synchronized int size() {return TERMS.size();}
+}
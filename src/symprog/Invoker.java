@@ -0,0 +1,387 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.Collections;
+
+/**
+ * Invocation engine of resolved members.<br>
+ * Members are invoked through method handles adapted once to a generic shape, which lets the
+ * JIT inline through symbolic calls. Reflection remains the fallback for members that can't
+ * be unreflected, while members having a generated {@link Accessor} are directly invoked by it.<br>
+ * All flavors follow the {@link Method#invoke} contract: argument mismatches are reported
+ * by an {@link IllegalArgumentException} (or a {@link NullPointerException} for a missing
+ * receiver) and target's exceptions are wrapped in an {@link InvocationTargetException}.
+ *
+ * @author Bernard Blaser
+ *
+ */
+abstract class Invoker {
+	static final Object[] NO_ARGS = new Object[0];
+
+	private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+	private static final MethodHandle NOT_DOUBLES = MethodHandles.identity(Object.class);
+
+	protected final Member MEMBER;
+	private volatile MethodHandle doubles; // See doubles(), computed once
+
+	private Invoker(Member member) {MEMBER = member;}
+
+	static Invoker of(AccessibleObject member) {
+		try {
+			if (member instanceof Method)
+				return new Handle((Method)member, method((Method)member));
+			else
+				return new Handle((Field)member, getter((Field)member));
+		}
+		catch (IllegalAccessException e) {
+			return new Reflective(member);
+		}
+	}
+
+	// Invoker of a member through its accessor, resolved only when necessary.
+	static Invoker of(Accessor accessor, int index, Symbol<?> symbol) {
+		return new Accessed(accessor, index, symbol);
+	}
+
+	abstract Object invoke(Object instance, Object[] args)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException;
+
+	// Invocations of the common arities, without arguments array when possible.
+	Object invoke0(Object instance)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		return invoke(instance, NO_ARGS);
+	}
+	Object invoke1(Object instance, Object a)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		return invoke(instance, new Object[] {a});
+	}
+	Object invoke2(Object instance, Object a, Object b)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		return invoke(instance, new Object[] {a, b});
+	}
+	Object invoke3(Object instance, Object a, Object b, Object c)
+			throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+		return invoke(instance, new Object[] {a, b, c});
+	}
+
+	/**
+	 * Returns the handle <code>(Object instance, P1 p1, ..., Pn pn)R</code> invoking the member
+	 * with its declared parameter and result types, <b><code>null</code></b> if it is
+	 * reflectively invoked.<br>
+	 * Its failures, once adapted to other types, have to be interpreted by {@link #failure}.
+	 */
+	MethodHandle exact() {return null;}
+
+	/**
+	 * Returns the handle <code>(Object instance, double a, double b, double c)double</code>
+	 * invoking the member if it takes at most three <b><code>double</code></b> parameters and
+	 * returns a <b><code>double</code></b>, the extra arguments being ignored;
+	 * <b><code>null</code></b> otherwise. Its failures are interpreted by {@link #failure}.
+	 */
+	MethodHandle doubles() {
+		MethodHandle h = doubles;
+		if (h == null) {
+			MethodHandle exact = exact();
+			int arity = exact != null ? exact.type().parameterCount() - 1 : -1;
+			if (arity >= 0 && arity <= 3 && exact.type().equals(MethodType.methodType(double.class, Object.class)
+					.appendParameterTypes(Collections.nCopies(arity, double.class))))
+				h = MethodHandles.dropArguments(exact, arity + 1, Collections.nCopies(3 - arity, double.class));
+			else
+				h = NOT_DOUBLES;
+			doubles = h;
+		}
+		return h != NOT_DOUBLES ? h : null;
+	}
+
+	Member member() {return MEMBER;}
+
+	private static MethodHandle method(Method m) throws IllegalAccessException {
+		MethodHandle h = LOOKUP.unreflect(m).asFixedArity();
+		if (Modifier.isStatic(m.getModifiers()))
+			return MethodHandles.dropArguments(h, 0, Object.class);
+
+		return h.asType(h.type().changeParameterType(0, Object.class));
+	}
+
+	private static MethodHandle getter(Field f) throws IllegalAccessException {
+		MethodHandle h = LOOKUP.unreflectGetter(f);
+		if (Modifier.isStatic(f.getModifiers()))
+			return MethodHandles.dropArguments(h, 0, Object.class);
+
+		return h.asType(h.type().changeParameterType(0, Object.class));
+	}
+
+	/**
+	 * Returns the reflective exception corresponding to the given failure of the handle,
+	 * throwing it directly if the receiver or the arguments were rejected.
+	 */
+	InvocationTargetException failure(Throwable t, Object instance, Object[] args)
+			throws IllegalArgumentException {
+		if (t instanceof ClassCastException || t instanceof NullPointerException ||
+				t instanceof IllegalArgumentException) {
+			// Thrown either by the adaptation of the arguments or by the target itself.
+			check(instance, args);
+		}
+		return new InvocationTargetException(t);
+	}
+
+	/**
+	 * Checks, as reflection does, that the given receiver and arguments are suitable for the
+	 * member; only used after a failure to find out its origin.
+	 */
+	void check(Object instance, Object[] args) throws IllegalArgumentException {
+		if (!Modifier.isStatic(MEMBER.getModifiers())) {
+			if (instance == null)
+				throw new NullPointerException();
+			if (!MEMBER.getDeclaringClass().isInstance(instance))
+				throw new IllegalArgumentException("object is not an instance of declaring class");
+		}
+
+		if (MEMBER instanceof Method) {
+			Class<?>[] params = ((Method)MEMBER).getParameterTypes();
+			if (params.length != args.length)
+				throw new IllegalArgumentException("wrong number of arguments");
+
+			for (int i=0; i<params.length; i++) {
+				if (!assignable(params[i], args[i]))
+					throw new IllegalArgumentException("argument type mismatch");
+			}
+		}
+	}
+
+	// Method.invoke() rules: unboxing possibly followed by a widening primitive conversion.
+	private static boolean assignable(Class<?> param, Object arg) {
+		if (!param.isPrimitive())
+			return arg == null || param.isInstance(arg);
+		else if (arg == null)
+			return false;
+		else if (param == boolean.class)
+			return arg instanceof Boolean;
+		else if (arg instanceof Character)
+			return param == char.class || rank(param) >= rank(int.class);
+
+		int rank = rank(arg.getClass());
+		return rank > 0 && rank <= rank(param);
+	}
+
+	private static int rank(Class<?> c) {
+		if (c == byte.class || c == Byte.class) return 1;
+		else if (c == short.class || c == Short.class) return 2;
+		else if (c == int.class || c == Integer.class) return 3;
+		else if (c == long.class || c == Long.class) return 4;
+		else if (c == float.class || c == Float.class) return 5;
+		else if (c == double.class || c == Double.class) return 6;
+		else return 0;
+	}
+
+	private static class Handle extends Invoker {
+		private final MethodHandle EXACT, HANDLE;
+		private final MethodHandle SPREAD; // (Object instance, Object[] args)Object
+		private final int ARITY;
+
+		private Handle(Member member, MethodHandle exact) {
+			super(member);
+			EXACT = exact;
+			ARITY = exact.type().parameterCount() - 1;
+			HANDLE = exact.asType(MethodType.genericMethodType(ARITY + 1));
+			SPREAD = member instanceof Method ?
+					HANDLE.asSpreader(Object[].class, ARITY) :
+					MethodHandles.dropArguments(HANDLE, 1, Object[].class);
+		}
+
+		@Override
+		MethodHandle exact() {return EXACT;}
+
+		@Override
+		Object invoke(Object instance, Object[] args)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (args == null) {args = NO_ARGS;}
+
+			try {
+				return (Object)SPREAD.invokeExact(instance, args);
+			}
+			catch (Throwable t) {throw failure(t, instance, args);}
+		}
+
+		@Override
+		Object invoke0(Object instance)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY != 0) {return invoke(instance, NO_ARGS);}
+
+			try {
+				return (Object)HANDLE.invokeExact(instance);
+			}
+			catch (Throwable t) {throw failure(t, instance, NO_ARGS);}
+		}
+
+		@Override
+		Object invoke1(Object instance, Object a)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY != 1) {return invoke(instance, new Object[] {a});}
+
+			try {
+				return (Object)HANDLE.invokeExact(instance, a);
+			}
+			catch (Throwable t) {throw failure(t, instance, new Object[] {a});}
+		}
+
+		@Override
+		Object invoke2(Object instance, Object a, Object b)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY != 2) {return invoke(instance, new Object[] {a, b});}
+
+			try {
+				return (Object)HANDLE.invokeExact(instance, a, b);
+			}
+			catch (Throwable t) {throw failure(t, instance, new Object[] {a, b});}
+		}
+
+		@Override
+		Object invoke3(Object instance, Object a, Object b, Object c)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY != 3) {return invoke(instance, new Object[] {a, b, c});}
+
+			try {
+				return (Object)HANDLE.invokeExact(instance, a, b, c);
+			}
+			catch (Throwable t) {throw failure(t, instance, new Object[] {a, b, c});}
+		}
+	}
+
+	private static class Reflective extends Invoker {
+		private Reflective(AccessibleObject member) {super((Member)member);}
+
+		@Override
+		Object invoke(Object instance, Object[] args)
+				throws IllegalAccessException, IllegalArgumentException, InvocationTargetException {
+			if (MEMBER instanceof Method)
+				return ((Method)MEMBER).invoke(instance, args);
+			else
+				return ((Field)MEMBER).get(instance);
+		}
+	}
+
+	/**
+	 * Invoker of a member accessed by the dispatch of its {@link Accessor}, without reflection.
+	 * The member is only resolved to be compiled or to find out the origin of a failure.
+	 */
+	private static class Accessed extends Invoker {
+		private final Accessor ACCESSOR;
+		private final int INDEX;
+		private final int ARITY; // Negative for fields
+		private final Symbol<?> SYMBOL;
+		private volatile Invoker resolved;
+
+		private Accessed(Accessor accessor, int index, Symbol<?> symbol) {
+			super(null);
+			ACCESSOR = accessor;
+			INDEX = index;
+			ARITY = symbol.DESCRIPTOR.PARAMS != null ? symbol.DESCRIPTOR.PARAMS.length : -1;
+			SYMBOL = symbol;
+		}
+
+		// Invoker of the resolved member, null if it can't be resolved.
+		private Invoker resolved() {
+			Invoker invoker = resolved;
+			if (invoker == null) {
+				try {
+					invoker = Invoker.of(SYMBOL.resolve());
+				}
+				catch (ReflectiveOperationException e) {return null;}
+				resolved = invoker;
+			}
+			return invoker;
+		}
+
+		@Override
+		MethodHandle exact() {
+			Invoker invoker = resolved();
+			return invoker != null ? invoker.exact() : null;
+		}
+
+		@Override
+		Member member() {
+			Invoker invoker = resolved();
+			return invoker != null ? invoker.member() : null;
+		}
+
+		@Override
+		void check(Object instance, Object[] args) throws IllegalArgumentException {
+			Invoker invoker = resolved();
+			if (invoker != null) {invoker.check(instance, args);}
+		}
+
+		@Override
+		Object invoke(Object instance, Object[] args)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (args == null) {args = NO_ARGS;}
+			if (ARITY >= 0 && args.length != ARITY)
+				throw new IllegalArgumentException("wrong number of arguments");
+
+			try {
+				return ACCESSOR.access(INDEX, instance, args);
+			}
+			catch (Throwable t) {throw failure(t, instance, args);}
+		}
+
+		@Override
+		Object invoke0(Object instance)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY > 0) {return invoke(instance, NO_ARGS);}
+
+			try {
+				return ACCESSOR.access0(INDEX, instance);
+			}
+			catch (Throwable t) {throw failure(t, instance, NO_ARGS);}
+		}
+
+		@Override
+		Object invoke1(Object instance, Object a)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY != 1) {return invoke(instance, new Object[] {a});}
+
+			try {
+				return ACCESSOR.access1(INDEX, instance, a);
+			}
+			catch (Throwable t) {throw failure(t, instance, new Object[] {a});}
+		}
+
+		@Override
+		Object invoke2(Object instance, Object a, Object b)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY != 2) {return invoke(instance, new Object[] {a, b});}
+
+			try {
+				return ACCESSOR.access2(INDEX, instance, a, b);
+			}
+			catch (Throwable t) {throw failure(t, instance, new Object[] {a, b});}
+		}
+
+		@Override
+		Object invoke3(Object instance, Object a, Object b, Object c)
+				throws IllegalArgumentException, InvocationTargetException {
+			if (ARITY != 3) {return invoke(instance, new Object[] {a, b, c});}
+
+			try {
+				return ACCESSOR.access3(INDEX, instance, a, b, c);
+			}
+			catch (Throwable t) {throw failure(t, instance, new Object[] {a, b, c});}
+		}
+	}
+}
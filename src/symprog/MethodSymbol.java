@@ -15,7 +15,13 @@
  */
 package symprog;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntFunction;
 
 /**
  * Symbolic view of methods.
@@ -24,26 +30,65 @@ import java.lang.reflect.*;
  *
  */
 public class MethodSymbol extends Symbol<Method> {
-	protected final String[] PARAMS;
-
 	public MethodSymbol(String class_name, String name, String[] params) {
-		super(class_name, name);
-		PARAMS = params != null ? params : new String[0];
+		this(class_name, name, params, false);
+	}
+
+	/**
+	 * @param pure : <b><code>true</code></b> if the method has no side effects, its arguments
+	 * can then be evaluated concurrently (see {@link ExpressionSymbol})
+	 */
+	public MethodSymbol(String class_name, String name, String[] params, boolean pure) {
+		this(class_name, name, params, pure, null);
+	}
+
+	/**
+	 * @param clazz : method's class, given by a constant rather than by name
+	 * @param params : method's parameter types, given by constants as well
+	 * @param accessor : direct access to the method generated by {@link SymProc} (nested in its
+	 * class), <b><code>null</code></b> if none
+	 * @param index : method's index in the accessor
+	 */
+	public MethodSymbol(Class<?> clazz, String name, Class<?>[] params, boolean pure, Accessor accessor, int index) {
+		this(clazz, name, params, pure, null, accessor, index);
+	}
+
+	// Symbols of methods whose parameters and result are all of the given primitive type.
+	MethodSymbol(String class_name, String name, String[] params, boolean pure, Class<?> primitive) {
+		this(Descriptor.of(class_name, name, params != null ? params : new String[0], pure, primitive));
 	}
+
+	MethodSymbol(Class<?> clazz, String name, Class<?>[] params, boolean pure, Class<?> primitive,
+			Accessor accessor, int index) {
+		this(Descriptor.of(clazz, name, params != null ? params : new Class<?>[0], pure, primitive));
+		DESCRIPTOR.access(accessor, index);
+	}
+
+	private MethodSymbol(Descriptor<Method> descriptor) {
+		super(descriptor);
+	}
+
+	public boolean pure() {return DESCRIPTOR.PURE;}
+
+	protected String[] params() {return DESCRIPTOR.PARAMS.clone();}
 	
 	@Override
 	public Method reflect() throws ClassNotFoundException, NoSuchMethodException {
-		Class<?>[] params = new Class<?>[PARAMS.length];
-		for (int i=0; i<PARAMS.length; i++) {
-			params[i] = translate(PARAMS[i]);
+		Class<?>[] params = DESCRIPTOR.parameterTypes();
+		if (params == null) {
+			String[] names = DESCRIPTOR.PARAMS;
+			params = new Class<?>[names.length];
+			for (int i=0; i<names.length; i++) {
+				params[i] = translate(names[i]);
+			}
 		}
-		return Class.forName(CLASS_NAME).getDeclaredMethod(NAME, params);
+		return DESCRIPTOR.declaringClass().getDeclaredMethod(DESCRIPTOR.NAME, params);
 	}
 	
 	@Deprecated
 	public Method reflectExplicit(Class<?>... params)
 			throws ClassNotFoundException, NoSuchMethodException {
-		return Class.forName(CLASS_NAME).getDeclaredMethod(NAME, params);
+		return DESCRIPTOR.declaringClass().getDeclaredMethod(DESCRIPTOR.NAME, params);
 	}
 	
 	private Class<?> translate(String type) throws ClassNotFoundException {
@@ -74,37 +119,74 @@ public class MethodSymbol extends Symbol<Method> {
 		if (quoted) {return this;}
 
 		try {
-			Method m = reflect();
-			m.setAccessible(true);
-			return m.invoke(instance);
+			return invoker().invoke0(instance);
 		}
 		catch (Exception e) {throw new SymbolicException(e);}
 	}
 
+	// Pure methods without parameters are constants.
+	@Override
+	public Term fold(Object instance, Environment env) throws SymbolicException {
+		if (quoted || !DESCRIPTOR.PURE || DESCRIPTOR.PARAMS.length > 0) {return this;}
+
+		try {
+			return new Value(evaluate(instance));
+		}
+		catch (SymbolicException e) {return this;}
+	}
+
+	// Impure methods are invoked once per row.
+	@Override
+	Object[] evaluateColumn(Object instance, Environment.Batch batch) throws SymbolicException {
+		if (quoted || DESCRIPTOR.PURE) {return super.evaluateColumn(instance, batch);}
+
+		Object[] column = new Object[batch.size()];
+		for (int i=0; i<column.length; i++) {column[i] = evaluate(instance);}
+		return column;
+	}
+
+	@Override
+	Class<?> primitive() {return quoted ? null : DESCRIPTOR.PRIMITIVE;}
+
+	@Override
+	int weight() {return quoted || DESCRIPTOR.PURE ? 1 : -1;}
+
+	@Override
+	MethodHandle handle() {return handle(Object.class);}
+
+	@Override
+	MethodHandle handle(Class<?> type) {
+		return quoted ? Compiler.convert(Compiler.constant(this), type) : Compiler.invocation(this, type);
+	}
+
 	@Deprecated
 	public ExpressionSymbol apply(Term... terms) { return build(terms); }
 	public ExpressionSymbol build(Term... terms) {
 		// TODO check expressions types with method parameters?
-		return new ExpressionSymbol(CLASS_NAME, NAME, PARAMS, null, false, terms);
+		return new ExpressionSymbol(DESCRIPTOR, null, false, list(terms));
 	}
 
 	public BoundMethodSymbol bind(Object instance) {
-		return new BoundMethodSymbol(CLASS_NAME, NAME, PARAMS, instance, true);
+		return new BoundMethodSymbol(DESCRIPTOR, instance, true);
+	}
+
+	private static List list(Term... terms) {
+		return new List(terms != null ? terms : new Term[0]);
 	}
 
 	public static class BoundMethodSymbol extends MethodSymbol {
 		protected final Object INSTANCE;
 		protected final boolean BOUND; // false = later binding for the all expression
 
-		private BoundMethodSymbol(String class_name, String name, String[] params, Object instance, boolean bound) {
-			super(class_name, name, params);
+		private BoundMethodSymbol(Descriptor<Method> descriptor, Object instance, boolean bound) {
+			super(descriptor);
 			INSTANCE = instance;
 			BOUND = bound;
 		}
 
 		@Override
 		public ExpressionSymbol build(Term... terms) {
-			return new ExpressionSymbol(CLASS_NAME, NAME, PARAMS, INSTANCE, BOUND, terms);
+			return new ExpressionSymbol(DESCRIPTOR, INSTANCE, BOUND, list(terms));
 		}
 
 		@Override
@@ -112,77 +194,831 @@ public class MethodSymbol extends Symbol<Method> {
 			return super.evaluate(BOUND ? INSTANCE : instance);
 		}
 
+		@Override
+		MethodHandle handle(Class<?> type) {
+			return BOUND ? Compiler.bound(super.handle(type), INSTANCE) : super.handle(type);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!super.equals(o)) {return false;}
+
+			BoundMethodSymbol s = (BoundMethodSymbol)o;
+			return INSTANCE == s.INSTANCE && BOUND == s.BOUND;
+		}
+
+		@Override
+		public int hashCode() {return 31 * super.hashCode() + System.identityHashCode(INSTANCE);}
+
 		@Override
 		public String toString() {
-			String name = BOUND ? "@" + NAME : NAME;
+			String name = BOUND ? "@" + DESCRIPTOR.NAME : DESCRIPTOR.NAME;
 			return quoted ? "'" + name : name;
 		}
 	}
 
+	/**
+	 * Symbolic expression.<br>
+	 * Expressions are interpreted until they've been evaluated more than
+	 * <b><code>symprog.compileThreshold</code></b> times (system property, 1000 by default,
+	 * negative to never compile) and then evaluated through their compiled form, until their tree
+	 * is mutated.<br>
+	 * Expressions whose whole tree is free of side effects evaluate their arguments of at least
+	 * <b><code>symprog.parallelThreshold</code></b> nodes (system property, negative by default
+	 * to never do it) concurrently in the common fork-join pool, smaller ones being evaluated
+	 * sequentially as usual. Expressions of pure methods also memoize their results if the
+	 * {@link Cache} is enabled. Such expressions are always interpreted.<br>
+	 * If <b><code>symprog.incremental</code></b> is set (system property, false by default),
+	 * expressions whose whole tree is free of side effects keep their last result, which is
+	 * reused as long as they're evaluated again with the same instance and environment, none
+	 * of them being modified. Once a term is set (see {@link Term.List#set}), only the
+	 * expressions above it are evaluated again. Such expressions are always interpreted as well.<br>
+	 * Trees deeper than <b><code>symprog.iterativeDepth</code></b> (system property, 500 by
+	 * default, negative to always use recursion) are interpreted with an explicit stack down to
+	 * their shallower subtrees, which are evaluated as usual, so that they don't overflow the
+	 * thread's stack. Their deep expressions are evaluated sequentially. Their structure
+	 * (equality, hash code and representation), their batch evaluation, folding, copy and
+	 * interning are always handled without recursion (see {@link Traversal}).
+	 */
 	public static class ExpressionSymbol extends BoundMethodSymbol {
+		static final int COMPILE_THRESHOLD = Integer.getInteger("symprog.compileThreshold", 1000);
+		static final int PARALLEL_THRESHOLD = Integer.getInteger("symprog.parallelThreshold", -1);
+		static final boolean INCREMENTAL = Boolean.getBoolean("symprog.incremental");
+		static final int ITERATIVE_DEPTH = Integer.getInteger("symprog.iterativeDepth", 500);
+
+		private final List LIST; // Shared with the quoted and bound copies
 		private final Term[] TERMS;
 
-		private ExpressionSymbol(String class_name, String name, String[] params, Object instance, boolean bound,
-				Term... terms) {
-			super(class_name, name, params, instance, bound);
-			TERMS = terms != null ? terms : new Term[0];
+		private int evaluations; // Interpreted ones, approximate under concurrency
+		private volatile Compiler.Compiled compiled;
+		private volatile Shape shape;
+		private volatile Result result; // Last one, if incremental
+
+		private ExpressionSymbol(Descriptor<Method> descriptor, Object instance, boolean bound, List terms) {
+			super(descriptor, instance, bound);
+			LIST = terms;
+			TERMS = terms.array();
 		}
 
 		@Override
-		public List terms() {return new List(TERMS);}
+		public List terms() {return LIST;}
 
 		@Override
 		public BoundMethodSymbol bind(Object instance) {
-			return new ExpressionSymbol(CLASS_NAME, NAME, PARAMS, instance, true, TERMS);
+			return new ExpressionSymbol(DESCRIPTOR, instance, true, LIST);
 		}
 
 		@Override
 		public Object evaluate(Object instance) throws SymbolicException {
+			return evaluate(instance, null);
+		}
 
+		@Override
+		public Object evaluate(Object instance, Environment env) throws SymbolicException {
 			if (quoted) {return this;}
 
+			Compiler.Compiled c = tier();
+			return c != null ? c.evaluate(instance, env) : interpret(instance, env);
+		}
+
+		@Override
+		public double evaluateAsDouble(Object instance, Environment env) throws SymbolicException {
+			if (quoted) {return super.evaluateAsDouble(instance, env);}
+
+			Compiler.Compiled c = tier();
+			return c != null ? c.evaluateAsDouble(instance, env) : asDouble(interpret(instance, env));
+		}
+
+		@Override
+		public long evaluateAsLong(Object instance, Environment env) throws SymbolicException {
+			if (quoted) {return super.evaluateAsLong(instance, env);}
+
+			Compiler.Compiled c = tier();
+			return c != null ? c.evaluateAsLong(instance, env) : asLong(interpret(instance, env));
+		}
+
+		@Override
+		public int evaluateAsInt(Object instance, Environment env) throws SymbolicException {
+			if (quoted) {return super.evaluateAsInt(instance, env);}
+
+			Compiler.Compiled c = tier();
+			return c != null ? c.evaluateAsInt(instance, env) : asInt(interpret(instance, env));
+		}
+
+		// Compiled form to evaluate this expression with, null while it has to be interpreted.
+		private Compiler.Compiled tier() {
+			Compiler.Compiled c = compiled;
+			if (c != null) {
+				if (c.version() == LIST.version())
+					return c;
+
+				compiled = null; // Back to the interpreter after a mutation.
+				evaluations = 0;
+			}
+			else if (COMPILE_THRESHOLD >= 0 && !interpreted() && ++evaluations > COMPILE_THRESHOLD) {
+				c = new Compiler.Compiled(this);
+				compiled = c;
+				return c;
+			}
+			return null;
+		}
+
+		@Override
+		Object interpret(Object instance, Environment env) throws SymbolicException {
+			if (deep()) {return iterate(instance, env);}
+			if (!incremental()) {return reinterpret(instance, env);}
+
+			// The version is read first, a mutation during the evaluation invalidates the result.
 			Object boundInstance = BOUND ? INSTANCE : instance;
-			Object[] evaluations = new Object[TERMS.length];
-			boolean[] quotations = new boolean[TERMS.length];
+			long version = LIST.version(), envVersion = env != null ? env.version() : 0;
+			Result r = last(version, boundInstance, env, envVersion);
+			if (r != null) {return r.VALUE;}
 
-			String actual = "", sep = "", expected = "";
-			for (int i=0; i<evaluations.length; i++) {
-				evaluations[i] = TERMS[i].evaluate(boundInstance);
-				quotations[i] = TERMS[i].quoted;
-				TERMS[i].quoted = false;
+			Object value = reinterpret(instance, env);
+			result = new Result(version, boundInstance, env, envVersion, value);
+			return value;
+		}
 
-				actual += sep + evaluations[i];
-				sep = ", ";
+		// Last result if it's still valid, null otherwise.
+		private Result last(long version, Object boundInstance, Environment env, long envVersion) {
+			Result r = result;
+			return r != null && r.VERSION == version && r.INSTANCE == boundInstance && r.ENV == env &&
+					r.ENV_VERSION == envVersion ? r : null;
+		}
+
+		/**
+		 * Evaluates this deep expression with an explicit stack of the deep expressions being
+		 * evaluated, the other terms being evaluated as usual.
+		 */
+		private Object iterate(Object instance, Environment env) throws SymbolicException {
+			Deque<Frame> frames = new ArrayDeque<>();
+			long envVersion = env != null ? env.version() : 0;
+			Frame f = new Frame(this, BOUND ? INSTANCE : instance);
+			Result r = incremental() ? last(f.VERSION, f.INSTANCE, env, envVersion) : null;
+			if (r != null) {return r.VALUE;}
+
+			while (true) {
+				if (f.next < f.EVALUATIONS.length) {
+					Term t = f.EXPRESSION.TERMS[f.next];
+					if (t.quoted) {
+						f.EVALUATIONS[f.next++] = t.unquote();
+					}
+					else if (t instanceof ExpressionSymbol && ((ExpressionSymbol)t).deep()) {
+						ExpressionSymbol e = (ExpressionSymbol)t;
+						Frame term = new Frame(e, e.BOUND ? e.INSTANCE : f.INSTANCE);
+						r = e.incremental() ? e.last(term.VERSION, term.INSTANCE, env, envVersion) : null;
+						if (r != null) {
+							f.EVALUATIONS[f.next++] = r.VALUE;
+						}
+						else {
+							frames.push(f);
+							f = term;
+						}
+					}
+					else {
+						f.EVALUATIONS[f.next++] = t.evaluate(f.INSTANCE, env);
+					}
+					continue;
+				}
+
+				// All the terms evaluated
+				ExpressionSymbol e = f.EXPRESSION;
+				Object value = e.memoize(f.INSTANCE, f.EVALUATIONS);
+				if (e.incremental()) {e.result = new Result(f.VERSION, f.INSTANCE, env, envVersion, value);}
+
+				if (frames.isEmpty()) {return value;}
+				f = frames.pop();
+				f.EVALUATIONS[f.next++] = value;
+			}
+		}
+
+		// Expression being iteratively evaluated.
+		private static final class Frame {
+			private final ExpressionSymbol EXPRESSION;
+			private final Object INSTANCE; // Bound one
+			private final long VERSION; // Read first, as for an incremental evaluation
+			private final Object[] EVALUATIONS;
+			private int next; // Term to evaluate
+
+			private Frame(ExpressionSymbol expression, Object instance) {
+				EXPRESSION = expression;
+				INSTANCE = instance;
+				VERSION = expression.LIST.version();
+				EVALUATIONS = new Object[expression.TERMS.length];
+			}
+		}
+
+		/**
+		 * Bottom-up traversal of a tree with an explicit stack rather than recursion: the terms of
+		 * an expression are handled before it, by default with the instance the expression
+		 * evaluates them with.
+		 *
+		 * @param <R> : result of the traversal for each term
+		 */
+		abstract static class Traversal<R> {
+			private final IntFunction<R[]> ARRAYS;
+
+			Traversal(IntFunction<R[]> arrays) {ARRAYS = arrays;}
+
+			// Result for a term that isn't an expression.
+			abstract R leaf(Term t, Object instance) throws SymbolicException;
+
+			// Result for an expression before its terms are handled, null to handle them first.
+			R enter(ExpressionSymbol e, Object instance) throws SymbolicException {return null;}
+
+			// Result for an expression given the results of its terms.
+			abstract R exit(ExpressionSymbol e, Object instance, R[] results) throws SymbolicException;
+
+			// Instance (or any other context) with which the terms of an expression are handled.
+			Object inner(ExpressionSymbol e, Object instance) {return e.BOUND ? e.INSTANCE : instance;}
+
+			final R apply(Term t, Object instance) throws SymbolicException {
+				if (!(t instanceof ExpressionSymbol)) {return leaf(t, instance);}
+
+				R result = enter((ExpressionSymbol)t, instance);
+				if (result != null) {return result;}
+
+				Deque<Step<R>> steps = new ArrayDeque<>();
+				Step<R> s = new Step<>((ExpressionSymbol)t, instance, ARRAYS);
+				while (true) {
+					if (s.next < s.RESULTS.length) {
+						Term term = s.EXPRESSION.TERMS[s.next];
+						Object instanceOfTerm = inner(s.EXPRESSION, s.INSTANCE);
+						if (!(term instanceof ExpressionSymbol)) {
+							s.RESULTS[s.next++] = leaf(term, instanceOfTerm);
+						}
+						else if ((result = enter((ExpressionSymbol)term, instanceOfTerm)) != null) {
+							s.RESULTS[s.next++] = result;
+						}
+						else {
+							steps.push(s);
+							s = new Step<>((ExpressionSymbol)term, instanceOfTerm, ARRAYS);
+						}
+						continue;
+					}
+
+					result = exit(s.EXPRESSION, s.INSTANCE, s.RESULTS);
+					if (steps.isEmpty()) {return result;}
+					s = steps.pop();
+					s.RESULTS[s.next++] = result;
+				}
+			}
+		}
+
+		// Expression being traversed.
+		private static final class Step<R> {
+			private final ExpressionSymbol EXPRESSION;
+			private final Object INSTANCE; // Given to the expression, not yet bound
+			private final R[] RESULTS;
+			private int next; // Term to handle
+
+			private Step(ExpressionSymbol expression, Object instance, IntFunction<R[]> arrays) {
+				EXPRESSION = expression;
+				INSTANCE = instance;
+				RESULTS = arrays.apply(expression.TERMS.length);
+			}
+		}
+
+		// Evaluation of the terms and invocation, regardless of the last result.
+		private Object reinterpret(Object instance, Environment env) throws SymbolicException {
+			Object boundInstance = BOUND ? INSTANCE : instance;
+			int arity = TERMS.length;
+
+			if (parallel()) {return memoize(boundInstance, fork(boundInstance, env));}
+
+			// The common arities are invoked without allocating any arguments array.
+			Object[] evaluations = arity > 3 ? new Object[arity] : null;
+			Object a = null, b = null, c = null;
+
+			for (int i=0; i<arity; i++) {
+				Term t = TERMS[i];
+				// Quoted terms are passed unquoted to the function.
+				Object evaluation = t.quoted ? t.unquote() : t.evaluate(boundInstance, env);
+
+				if (evaluations != null) {evaluations[i] = evaluation;}
+				else if (i == 0) {a = evaluation;}
+				else if (i == 1) {b = evaluation;}
+				else {c = evaluation;}
+			}
+
+			if (memoized()) {
+				if (evaluations == null) {evaluations = Arrays.copyOf(new Object[] {a, b, c}, arity);}
+				return memoize(boundInstance, evaluations);
+			}
+			return invoke(boundInstance, evaluations, a, b, c);
+		}
+
+		@Override
+		Object[] evaluateColumn(Object instance, Environment.Batch batch) throws SymbolicException {
+			return Environment.Batch.boxed(evaluateUnboxed(instance, batch));
+		}
+
+		@Override
+		Object evaluateUnboxed(Object instance, Environment.Batch batch) throws SymbolicException {
+			if (quoted) {return new Object[] {this};}
+
+			return new Traversal<Object>(Object[]::new) {
+				@Override
+				Object leaf(Term t, Object instance) throws SymbolicException {
+					// Quoted terms are passed unquoted to the function.
+					return t.quoted ? new Object[] {t.unquote()} : t.evaluateUnboxed(instance, batch);
+				}
+
+				@Override
+				Object enter(ExpressionSymbol e, Object instance) {
+					return e.quoted ? new Object[] {e.unquote()} : null;
+				}
+
+				@Override
+				Object exit(ExpressionSymbol e, Object instance, Object[] columns) throws SymbolicException {
+					return e.invokeColumns(instance, columns, batch);
+				}
+			}.apply(this, instance);
+		}
+
+		// Invocations for the columns of the terms' evaluations, boxed or not.
+		private Object invokeColumns(Object instance, Object[] unboxed, Environment.Batch batch)
+				throws SymbolicException {
+			Object boundInstance = BOUND ? INSTANCE : instance;
+			int arity = TERMS.length, rows = DESCRIPTOR.PURE ? 1 : batch.size();
+			for (Object column: unboxed) {
+				if (Array.getLength(column) > 1) {rows = batch.size();}
 			}
 
-			Object result = null;
+			if (DESCRIPTOR.PRIMITIVE == double.class && arity <= 3) {
+				double[] results = invokeDoubles(boundInstance, unboxed, rows);
+				if (results != null) {return results;}
+			}
+
+			Object[][] columns = new Object[arity][];
+			for (int i=0; i<arity; i++) {columns[i] = Environment.Batch.boxed(unboxed[i]);}
+
+			// One invocation per row, or a single one if the method is pure and all the arguments
+			// are the same for every row; a single value is read at index (r & 0) of its column.
+			Object[] results = new Object[rows];
+			Object[] a = arity > 0 ? columns[0] : null, b = arity > 1 ? columns[1] : null,
+					c = arity > 2 ? columns[2] : null;
+			int ma = mask(a), mb = mask(b), mc = mask(c);
+
+			if (arity > 3) {
+				Object[] evaluations = new Object[arity];
+				for (int r=0; r<rows; r++) {
+					for (int i=0; i<arity; i++) {evaluations[i] = columns[i][r & mask(columns[i])];}
+					results[r] = invoke(boundInstance, evaluations, null, null, null);
+				}
+				return results;
+			}
+
+			Invoker invoker = null;
+			int r = 0;
+			try {
+				invoker = invoker();
+				switch (arity) {
+					case 0: for (; r<rows; r++) {results[r] = invoker.invoke0(boundInstance);} break;
+					case 1: for (; r<rows; r++) {results[r] = invoker.invoke1(boundInstance, a[r & ma]);} break;
+					case 2:
+						for (; r<rows; r++) {results[r] = invoker.invoke2(boundInstance, a[r & ma], b[r & mb]);}
+						break;
+					default:
+						for (; r<rows; r++) {
+							results[r] = invoker.invoke3(boundInstance, a[r & ma], b[r & mb], c[r & mc]);
+						}
+				}
+				return results;
+			}
+			catch (IllegalArgumentException e) {
+				Object[] evaluations = new Object[arity];
+				for (int i=0; i<arity; i++) {evaluations[i] = columns[i][r & mask(columns[i])];}
+				throw mismatch(invoker, evaluations, e);
+			}
+			catch (Exception e) {throw new SymbolicException(e);}
+		}
+
+		private static int mask(Object[] column) {
+			return column != null && column.length > 1 ? -1 : 0;
+		}
+
+		private static final double[] NONE = new double[1];
+
+		/**
+		 * Invocations of a primitive method for columns of doubles, through its exact handle
+		 * without boxing; null if it can't be invoked so or if some arguments aren't doubles.
+		 */
+		private double[] invokeDoubles(Object boundInstance, Object[] unboxed, int rows) throws SymbolicException {
+			int arity = unboxed.length;
+			Invoker invoker;
+			MethodHandle doubles;
 			try {
-				Method m = reflect();
-				expected = m.toString();
+				invoker = invoker();
+				doubles = invoker.doubles();
+			}
+			catch (Exception e) {return null;} // Fails as usual.
+			if (doubles == null) {return null;}
+
+			// Every arity is invoked as (instance, a, b, c), like the boxed invocations.
+			double[][] columns = new double[3][];
+			for (int i=0; i<3; i++) {
+				columns[i] = i < arity ? unboxed(unboxed[i]) : NONE;
+				if (columns[i] == null) {return null;}
+			}
 
-				m.setAccessible(true);
-				result = m.invoke(boundInstance, evaluations);
+			double[] a = columns[0], b = columns[1], c = columns[2], results = new double[rows];
+			int ma = a.length > 1 ? -1 : 0, mb = b.length > 1 ? -1 : 0, mc = c.length > 1 ? -1 : 0;
+			int r = 0;
+			try {
+				for (; r<rows; r++) {
+					results[r] = (double)doubles.invokeExact(boundInstance, a[r & ma], b[r & mb], c[r & mc]);
+				}
+				return results;
+			}
+			catch (Throwable t) {
+				Object[] evaluations = new Object[arity];
+				for (int i=0; i<arity; i++) {evaluations[i] = columns[i][r & (columns[i].length > 1 ? -1 : 0)];}
+				try {
+					throw new SymbolicException(invoker.failure(t, boundInstance, evaluations));
+				}
+				catch (IllegalArgumentException e) {throw mismatch(invoker, evaluations, e);}
+				catch (NullPointerException e) {throw new SymbolicException(e);}
+			}
+		}
+
+		// Unboxed values of a column, converted as by reflection; null if some aren't convertible.
+		private static double[] unboxed(Object column) {
+			if (column instanceof double[]) {return (double[])column;}
+
+			Object[] values = (Object[])column;
+			double[] unboxed = new double[values.length];
+			try {
+				for (int i=0; i<values.length; i++) {
+					unboxed[i] = (double)Compiler.TO_DOUBLE.invokeExact(values[i]);
+				}
+			}
+			catch (Throwable t) {return null;}
+			return unboxed;
+		}
+
+		private Object invoke(Object boundInstance, Object[] evaluations, Object a, Object b, Object c)
+				throws SymbolicException {
+			Invoker invoker = null;
+			try {
+				invoker = invoker();
+				switch (TERMS.length) {
+					case 0: return invoker.invoke0(boundInstance);
+					case 1: return invoker.invoke1(boundInstance, a);
+					case 2: return invoker.invoke2(boundInstance, a, b);
+					case 3: return invoker.invoke3(boundInstance, a, b, c);
+					default: return invoker.invoke(boundInstance, evaluations);
+				}
 			}
 			catch (IllegalArgumentException e) {
-				throw new SymbolicException("expected -> " + expected + ", actual -> " + actual, e);
+				// Diagnostic only built on failure.
+				evaluations = evaluations != null ?
+						evaluations.clone() : Arrays.copyOf(new Object[] {a, b, c}, TERMS.length);
+
+				throw mismatch(invoker, evaluations, e);
 			}
 			catch (Exception e) {throw new SymbolicException(e);}
+		}
+
+		@Override
+		public Term fold(Object instance, Environment env) throws SymbolicException {
+			return new Traversal<Term>(Term[]::new) {
+				@Override
+				Term leaf(Term t, Object instance) throws SymbolicException {return t.fold(instance, env);}
+
+				@Override
+				Term enter(ExpressionSymbol e, Object instance) {return e.quoted ? e : null;}
+
+				@Override
+				Term exit(ExpressionSymbol e, Object instance, Term[] terms) throws SymbolicException {
+					return e.fold(instance, terms);
+				}
+			}.apply(this, instance);
+		}
+
+		// Folding of this expression given its folded terms.
+		private Term fold(Object instance, Term[] terms) throws SymbolicException {
+			boolean folded = false, constant = DESCRIPTOR.PURE;
+			for (int i=0; i<terms.length; i++) {
+				folded |= terms[i] != TERMS[i];
+				// Quoted terms are passed as is, so they're constants too.
+				constant &= terms[i].quoted || terms[i] instanceof Value;
+			}
+
+			ExpressionSymbol e = folded ? rebuild(terms) : this;
+			if (constant) {
+				try {
+					return new Value(e.interpret(instance, null));
+				}
+				catch (SymbolicException ex) {} // Left to fail when evaluated.
+			}
+			return e;
+		}
+
+		@Override
+		MethodHandle handle(Class<?> type) {
+			if (quoted) {return super.handle(type);}
+			if (interpreted()) {return Compiler.convert(Compiler.interpreted(this), type);}
+
+			MethodHandle h = Compiler.invocation(this, type, TERMS);
+			return BOUND ? Compiler.bound(h, INSTANCE) : h;
+		}
+
+		@Override
+		int weight() {
+			if (quoted) {return 1;}
+
+			return shape().NODES;
+		}
+
+		// Structure of this expression's tree, computed once per version.
+		private Shape shape() {
+			Shape s = shape;
+			if (s != null && s.VERSION == LIST.version()) {return s;}
+
+			// The outdated shapes below are computed first, without recursion.
+			Deque<ExpressionSymbol> pending = new ArrayDeque<>();
+			pending.push(this);
+			while (!pending.isEmpty()) {
+				ExpressionSymbol e = pending.peek();
+				boolean ready = true;
+				for (Term t: e.TERMS) {
+					if (t instanceof ExpressionSymbol && !((ExpressionSymbol)t).shaped()) {
+						pending.push((ExpressionSymbol)t);
+						ready = false;
+					}
+				}
+				if (ready) {
+					pending.pop();
+					e.shape = e.measure();
+				}
+			}
+			return shape;
+		}
+
+		private boolean shaped() {
+			Shape s = shape;
+			return s != null && s.VERSION == LIST.version();
+		}
+
+		// Shape of this expression, the ones of its terms being up to date.
+		private Shape measure() {
+			long version = LIST.version();
+			int nodes = DESCRIPTOR.PURE ? 1 : -1, forks = 0, depth = 0;
+			for (Term t: TERMS) {
+				int n = t.weight();
+				if (n < 0) {nodes = -1;}
+				else if (nodes >= 0) {nodes += n;}
+				if (!t.quoted && n >= PARALLEL_THRESHOLD) {forks++;}
+				depth = Math.max(depth, t instanceof ExpressionSymbol ? ((ExpressionSymbol)t).shape().DEPTH : 1);
+			}
+			return new Shape(version, nodes, nodes >= 0 ? forks : 0, depth + 1, Arrays.hashCode(TERMS));
+		}
 
-			for (int i=0; i<quotations.length; i++) {
-				TERMS[i].quoted = quotations[i];
+		private static final class Shape {
+			private final long VERSION;
+			private final int NODES; // Negative if the tree isn't free of side effects
+			private final int FORKS; // Arguments heavy enough to be evaluated concurrently
+			private final int DEPTH;
+			private final int HASH; // Structural hash of the terms
+
+			private Shape(long version, int nodes, int forks, int depth, int hash) {
+				VERSION = version;
+				NODES = nodes;
+				FORKS = forks;
+				DEPTH = depth;
+				HASH = hash;
+			}
+		}
+
+		// Whether this expression is too deep to be evaluated recursively.
+		private boolean deep() {
+			return ITERATIVE_DEPTH >= 0 && !quoted && shape().DEPTH > ITERATIVE_DEPTH;
+		}
+
+		// Whether this expression can't be compiled.
+		private boolean interpreted() {
+			return parallel() || memoized() || incremental() || deep();
+		}
+
+		private boolean incremental() {
+			return INCREMENTAL && !quoted && shape().NODES >= 0;
+		}
+
+		private static final class Result {
+			private final long VERSION;
+			private final Object INSTANCE; // Compared by identity, as the environment
+			private final Environment ENV;
+			private final long ENV_VERSION;
+			private final Object VALUE;
+
+			private Result(long version, Object instance, Environment env, long envVersion, Object value) {
+				VERSION = version;
+				INSTANCE = instance;
+				ENV = env;
+				ENV_VERSION = envVersion;
+				VALUE = value;
+			}
+		}
+
+		private boolean memoized() {
+			return Cache.SIZE > 0 && !quoted && DESCRIPTOR.PURE;
+		}
+
+		// Invocation whose result is memoized if needed.
+		private Object memoize(Object boundInstance, Object[] evaluations) throws SymbolicException {
+			Cache cache = memoized() ? cache() : null;
+			Object result = cache != null ? cache.get(boundInstance, evaluations) : Cache.MISSING;
+
+			if (result == Cache.MISSING) {
+				int arity = TERMS.length;
+				result = arity > 3 ? invoke(boundInstance, evaluations, null, null, null) :
+					invoke(boundInstance, null, arity > 0 ? evaluations[0] : null,
+							arity > 1 ? evaluations[1] : null, arity > 2 ? evaluations[2] : null);
+
+				if (cache != null) {cache.put(boundInstance, evaluations, result);}
 			}
 			return result;
 		}
 
+		// Whether the arguments are evaluated concurrently, at least two of them being heavy.
+		private boolean parallel() {
+			return PARALLEL_THRESHOLD >= 0 && !quoted && DESCRIPTOR.PURE && shape().FORKS > 1;
+		}
+
+		/**
+		 * Evaluates the arguments, the heavy ones being forked except the last one evaluated by
+		 * the current thread. The failure reported is the one of the first failing argument, as
+		 * by a sequential evaluation.
+		 */
+		private Object[] fork(Object boundInstance, Environment env) throws SymbolicException {
+			int arity = TERMS.length, last = -1;
+			for (int i=0; i<arity; i++) {
+				if (!TERMS[i].quoted && TERMS[i].weight() >= PARALLEL_THRESHOLD) {last = i;}
+			}
+
+			Object[] evaluations = new Object[arity];
+			Fork[] forks = new Fork[arity];
+			RuntimeException failure = null;
+			int failed = arity;
+
+			for (int i=0; i<arity && failure == null; i++) {
+				Term t = TERMS[i];
+				if (t.quoted) {
+					evaluations[i] = t.unquote();
+				}
+				else if (i != last && t.weight() >= PARALLEL_THRESHOLD) {
+					forks[i] = new Fork(t, boundInstance, env);
+					forks[i].fork();
+				}
+				else {
+					try {
+						evaluations[i] = t.evaluate(boundInstance, env);
+					}
+					catch (RuntimeException e) {
+						failure = e;
+						failed = i;
+					}
+				}
+			}
+
+			for (int i=0; i<failed; i++) {
+				if (forks[i] != null) {
+					forks[i].join();
+					if (forks[i].failure != null) {
+						failure = forks[i].failure;
+						break;
+					}
+					evaluations[i] = forks[i].evaluation;
+				}
+			}
+			if (failure != null) {throw failure;}
+
+			return evaluations;
+		}
+
+		// Concurrent evaluation of an argument, its failure being rethrown as is by the parent.
+		@SuppressWarnings("serial")
+		private static final class Fork extends RecursiveTask<Void> {
+			private final Term TERM;
+			private final Object INSTANCE;
+			private final Environment ENV;
+			private Object evaluation;
+			private RuntimeException failure;
+
+			private Fork(Term term, Object instance, Environment env) {
+				TERM = term;
+				INSTANCE = instance;
+				ENV = env;
+			}
+
+			@Override
+			protected Void compute() {
+				try {
+					evaluation = TERM.evaluate(INSTANCE, ENV);
+				}
+				catch (RuntimeException e) {failure = e;}
+				return null;
+			}
+		}
+
+		static SymbolicException mismatch(Invoker invoker, Object[] args, IllegalArgumentException e) {
+			String actual = "", sep = "";
+			for (Object arg: args) {
+				actual += sep + arg;
+				sep = ", ";
+			}
+			return new SymbolicException("expected -> " + invoker.member() + ", actual -> " + actual, e);
+		}
+
+		/**
+		 * Expressions are equal if they invoke the same method with equal terms, their hash code
+		 * being cached until their tree is mutated.
+		 */
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {return true;}
+			if (!like(o)) {return false;}
+
+			// Pairs of expressions to compare, without recursion.
+			Deque<ExpressionSymbol> pairs = new ArrayDeque<>();
+			pairs.push(this);
+			pairs.push((ExpressionSymbol)o);
+			while (!pairs.isEmpty()) {
+				ExpressionSymbol b = pairs.pop(), a = pairs.pop();
+				if (a.shape().HASH != b.shape().HASH || a.TERMS.length != b.TERMS.length) {return false;}
+
+				for (int i=0; i<a.TERMS.length; i++) {
+					Term t = a.TERMS[i], u = b.TERMS[i];
+					if (t == u) {continue;}
+
+					if (t instanceof ExpressionSymbol) {
+						if (!((ExpressionSymbol)t).like(u)) {return false;}
+						pairs.push((ExpressionSymbol)t);
+						pairs.push((ExpressionSymbol)u);
+					}
+					else if (t == null || !t.equals(u)) {return false;}
+				}
+			}
+			return true;
+		}
+
+		// Whether the given object is an expression invoking the same method, regardless of the terms.
+		private boolean like(Object o) {return super.equals(o);}
+
+		@Override
+		public int hashCode() {return 31 * super.hashCode() + shape().HASH;}
+
+		@Override
+		public Term copy() throws SymbolicException {
+			return new Traversal<Term>(Term[]::new) {
+				@Override
+				Term leaf(Term t, Object instance) throws SymbolicException {return t.copy();}
+
+				@Override
+				Term exit(ExpressionSymbol e, Object instance, Term[] terms) throws SymbolicException {
+					return e.rebuild(terms);
+				}
+			}.apply(this, null);
+		}
+
+		// Symbol building this expression (unquoted) from its terms.
+		BoundMethodSymbol head() {
+			return new BoundMethodSymbol(DESCRIPTOR, INSTANCE, BOUND);
+		}
+
+		// Same expression with other terms.
+		ExpressionSymbol rebuild(Term... terms) throws SymbolicException {
+			ExpressionSymbol e = new ExpressionSymbol(DESCRIPTOR, INSTANCE, BOUND, list(terms));
+			return quoted ? (ExpressionSymbol)e.quote() : e;
+		}
+
 		@Override
 		public String toString() {
-			String name = super.toString();
-			String sep = "(";
-			for (int i=0; i<TERMS.length; i++) {
-				name += sep + TERMS[i];
-				sep = ",";
+			// Terms and separators still to append, without recursion.
+			StringBuilder s = new StringBuilder();
+			Deque<Object> pending = new ArrayDeque<>();
+			pending.push(this);
+			while (!pending.isEmpty()) {
+				Object o = pending.pop();
+				if (!(o instanceof ExpressionSymbol)) {
+					s.append(o);
+					continue;
+				}
+
+				ExpressionSymbol e = (ExpressionSymbol)o;
+				s.append(e.label());
+				if (e.TERMS.length > 0) {
+					pending.push(")");
+					for (int i=e.TERMS.length-1; i>=0; i--) {
+						pending.push(e.TERMS[i] != null ? e.TERMS[i] : "null");
+						pending.push(i > 0 ? "," : "(");
+					}
+				}
 			}
-			return TERMS.length > 0 ? name + ")" : name;
+			return s.toString();
 		}
+
+		private String label() {return super.toString();}
 	}
 }
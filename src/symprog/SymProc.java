@@ -15,12 +15,17 @@
  */
 package symprog;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.Modifier;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 import javax.annotation.processing.*;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.*;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
 
 import com.sun.source.util.Trees;
 import com.sun.tools.javac.code.*;
@@ -41,52 +46,102 @@ import com.sun.tools.javac.jvm.ClassReader;
  */
 @SupportedAnnotationTypes("symprog.Symbolic")
 @SupportedSourceVersion(SourceVersion.RELEASE_8)
+@SupportedOptions(SymProc.VERBOSITY)
 public class SymProc extends AbstractProcessor {
+	/**
+	 * Option <code>-Asymprog.verbosity=</code><i>level</i> reporting notes about the processed
+	 * classes (1), their symbols (2) and the parameter types of the methods (3), quiet by default.
+	 */
+	public static final String VERBOSITY = "symprog.verbosity";
+	private static final int CLASSES = 1, MEMBERS = 2, PARAMETERS = 3;
+
+	/**
+	 * Only the classes declaring symbolic members are visited, each one on its own.<br>
+	 * Their trees are rewritten through javac's internals, so the processor needs javac's own
+	 * processing environment. It isn't declared incremental to build tools (Gradle wraps the
+	 * environment of incremental processors), which therefore recompile all the sources.
+	 */
 	@Override
 	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment re) {
-		if (!re.processingOver()) {
-			SymbolGenerator gen = new SymbolGenerator(
-					((JavacProcessingEnvironment) processingEnv).getContext()
-			);
+		if (annotations.isEmpty()) {return true;}
 
-			for (Element e: re.getRootElements()) {
-				JCTree tree = (JCTree) Trees.instance(processingEnv).getTree(e);
-				tree.accept(gen);
-			}
+		if (!(processingEnv instanceof JavacProcessingEnvironment)) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+					"SymProc needs javac's processing environment, not " + processingEnv.getClass().getName());
+			return true;
+		}
+
+		Set<TypeElement> classes = new LinkedHashSet<>();
+		for (Element e: re.getElementsAnnotatedWith(Symbolic.class)) {
+			classes.add((TypeElement) e.getEnclosingElement());
+		}
+
+		SymbolGenerator gen = new SymbolGenerator(
+				((JavacProcessingEnvironment) processingEnv).getContext(),
+				processingEnv,
+				verbosity()
+		);
+		Trees trees = Trees.instance(processingEnv);
+
+		for (TypeElement c: classes) {
+			JCTree tree = (JCTree) trees.getTree(c);
+			if (tree instanceof JCClassDecl)
+				gen.generateSymbols((JCClassDecl) tree);
 		}
 		return true;
 	}
 
-	private static class SymbolGenerator extends TreeTranslator {
+	private int verbosity() {
+		String level = processingEnv.getOptions().get(VERBOSITY);
+		try {
+			return level != null ? Integer.parseInt(level) : 0;
+		}
+		catch (NumberFormatException e) {
+			processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+					"Invalid " + VERBOSITY + ": " + level);
+			return 0;
+		}
+	}
+
+	private static class SymbolGenerator {
+		private static final String ACCESSOR = "$Accessor"; // Generated nested classes
+		private static final String HOLDER = "$Symbols";
+		private static final String[] FIXED_ARGS = {"a", "b", "c"}; // Of the accessN() dispatches
+
 		private TreeMaker nodes;
 		private Names names;
 		private Types types;
 		private Symtab symtab;
 		private ClassReader classes;
+		private ProcessingEnvironment environment;
+		private int verbosity;
 
-		private SymbolGenerator(Context context) {
+		private SymbolGenerator(Context context, ProcessingEnvironment environment, int verbosity) {
 			nodes = TreeMaker.instance(context);
 			names = Names.instance(context);
 			types = Types.instance(context);
 			symtab = Symtab.instance(context);
 			classes = ClassReader.instance(context);
+			this.environment = environment;
+			this.verbosity = verbosity;
 		}
 
-		@Override
-		public void visitClassDef(JCClassDecl tree) {
-			super.visitClassDef(tree);
-
-			if (tree.sym != null) {
-				// Not anonymous
-				System.out.println("Generate symbols for class: " +
-				tree.sym.flatname);
-
-				generateSymbols(tree);
+		// Reports a note about the element, built only if the verbosity is at least the given level.
+		private void note(int level, Element e, Object... message) {
+			if (verbosity >= level) {
+				StringBuilder note = new StringBuilder();
+				for (Object m: message) {note.append(m);}
+				environment.getMessager().printMessage(Diagnostic.Kind.NOTE, note, e);
 			}
 		}
 
 		private void generateSymbols(JCClassDecl clazz) {
+			note(CLASSES, clazz.sym, "Generate symbols for class: ", clazz.sym.flatname);
+
 			List<JCTree> newDefs = List.from(clazz.defs);
+			List<JCTree> accessed = List.nil(); // Members of the accessor, by index
+			List<JCTree> lazySymbols = List.nil(); // Fields of the holder
+			List<String[]> entries = List.nil(); // Of the symbols' index
 
 			for (JCTree decl: clazz.defs) {
 				if (decl instanceof JCMethodDecl) {
@@ -96,24 +151,45 @@ public class SymProc extends AbstractProcessor {
 					Name name = met.name;
 
 					if (symbolic != null) {
-						// TODO compiler output?
-						System.out.println("|-" + name + " -> " + symbolic.value()+name+symbolic.suffix());
+						note(MEMBERS, met.sym, "|-", name, " -> ", symbolic.value(), name, symbolic.suffix());
 
-						List<String> paramsTypes = List.nil();
+						List<Type> paramsTypes = List.nil();
+						List<String> paramsNames = List.nil();
 
 						for (VarSymbol param: met.sym.getParameters()) {
 							Type erasure = param.erasure(types);
-							paramsTypes = paramsTypes.append(translate(erasure));
+							paramsTypes = paramsTypes.append(erasure);
+							paramsNames = paramsNames.append(translate(erasure));
+							note(PARAMETERS, met.sym, " |-", paramsNames.last());
 						}
 
-						newDefs = newDefs.append(generateSymbol(
-								MethodSymbol.class.getName(),
+						if (symbolic.origin().isEmpty()) {
+							entries = entries.append(indexEntry(symbolType(met), met.sym.flags(), symbolic,
+									Symbols.key(name.toString(), paramsNames.toArray(new String[0]))));
+						}
+
+						// Generic methods might not be applicable to their erased arguments.
+						int index = accessible(clazz, symbolic) && met.typarams.isEmpty() ? accessed.size() : -1;
+						if (index >= 0)
+							accessed = accessed.append(met);
+
+						JCVariableDecl symbol = generateSymbol(
+								symbolType(met),
 								symbolic,
-								clazz.sym.flatname.toString(),
+								clazz.sym,
 								name.toString(),
 								met.sym.flags(),
 								decl.getStartPosition(),
-								paramsTypes));
+								paramsTypes,
+								index);
+
+						if (lazy(clazz, symbolic, met.sym)) {
+							lazySymbols = lazySymbols.append(symbol);
+							newDefs = newDefs.append(generateLazySymbol(symbol));
+						}
+						else {
+							newDefs = newDefs.append(symbol);
+						}
 					}
 				}
 				else if (decl instanceof JCVariableDecl) {
@@ -122,67 +198,229 @@ public class SymProc extends AbstractProcessor {
 					Name name = var.name;
 
 					if (symbolic != null) {
-						System.out.println("|-" + name + " -> " + symbolic.value()+name+symbolic.suffix());
+						note(MEMBERS, var.sym, "|-", name, " -> ", symbolic.value(), name, symbolic.suffix());
+
+						if (symbolic.origin().isEmpty()) {
+							entries = entries.append(indexEntry(FieldSymbol.class.getName(), var.sym.flags(), symbolic,
+									Symbols.key(name.toString(), null)));
+						}
 
-						newDefs = newDefs.append(generateSymbol(
+						int index = accessible(clazz, symbolic) ? accessed.size() : -1;
+						if (index >= 0)
+							accessed = accessed.append(var);
+
+						JCVariableDecl symbol = generateSymbol(
 								FieldSymbol.class.getName(),
 								symbolic,
-								clazz.sym.flatname.toString(),
+								clazz.sym,
 								name.toString(),
 								var.sym.flags(),
 								decl.getStartPosition(),
-								null));
+								null,
+								index);
+
+						if (lazy(clazz, symbolic, var.sym)) {
+							lazySymbols = lazySymbols.append(symbol);
+							newDefs = newDefs.append(generateLazySymbol(symbol));
+						}
+						else {
+							newDefs = newDefs.append(symbol);
+						}
 					}
 
 				}
 			}
+
+			if (!accessed.isEmpty())
+				newDefs = newDefs.append(generateAccessor(clazz, accessed));
+
+			if (!lazySymbols.isEmpty())
+				newDefs = newDefs.append(generateHolder(clazz, lazySymbols));
+
+			if (!entries.isEmpty())
+				writeIndex(clazz.sym, entries);
+
 			clazz.defs = newDefs;
 		}
 
+		/**
+		 * Returns <b><code>true</code></b> if the member can be accessed by a class nested in its
+		 * own class.
+		 */
+		private boolean accessible(JCClassDecl clazz, Symbolic symbolic) {
+			return symbolic.origin().isEmpty() && nestable(clazz);
+		}
+
+		/**
+		 * Returns <b><code>true</code></b> if the class can declare a static nested class, that is
+		 * if it's a top-level or a static member class.
+		 */
+		private boolean nestable(JCClassDecl clazz) {
+			int owner = clazz.sym.owner.kind;
+			return owner == Kinds.PCK || owner == Kinds.TYP && !clazz.sym.isInner();
+		}
+
+		// Lazy symbols are held by a static nested class, otherwise they're eagerly created.
+		private boolean lazy(JCClassDecl clazz, Symbolic symbolic, Element member) {
+			if (symbolic.lazy() && !nestable(clazz)) {
+				environment.getMessager().printMessage(Diagnostic.Kind.WARNING, "Eager symbol for " + member +
+						": lazy symbols need a static nested class, which inner and local classes can't declare", member);
+			}
+			return symbolic.lazy() && nestable(clazz);
+		}
+
+		// Generated nested classes are private, unless nested in interfaces whose members are public.
+		private long nestedFlags(JCClassDecl clazz) {
+			return (clazz.sym.flags() & Flags.INTERFACE) != 0 ?
+					Flags.STATIC | Flags.FINAL :
+					Flags.PRIVATE | Flags.STATIC | Flags.FINAL;
+		}
+
+		// Entry of the index: symbol's type, member's modifiers, purity and key (see Symbols).
+		private String[] indexEntry(String symbolType, long flags, Symbolic symbolic, String key) {
+			return new String[] {
+					symbolType,
+					Integer.toString((int) (flags & Flags.ModifierFlags)),
+					symbolic.pure() ? "pure" : "impure",
+					key};
+		}
+
+		/**
+		 * Writes the index of the class' symbols, read by {@link Symbols}: the seeds of the
+		 * perfect hash of their keys followed by the entries in their slots.
+		 */
+		private void writeIndex(ClassSymbol clazz, List<String[]> entries) {
+			String[] keys = new String[entries.size()];
+			int k = 0;
+			for (String[] entry: entries) {keys[k++] = entry[3];}
+
+			int[] seeds = Symbols.seeds(keys);
+			if (seeds == null) {
+				environment.getMessager().printMessage(Diagnostic.Kind.ERROR,
+						"Symbols' index not written: no perfect hash of their keys found", clazz);
+				return;
+			}
+
+			String[] lines = new String[keys.length];
+			for (String[] entry: entries) {
+				lines[Symbols.slot(entry[3], seeds)] = String.join(" ", entry);
+			}
+
+			String name = Symbols.INDEX + clazz.flatname + Symbols.EXTENSION;
+			try (Writer w = environment.getFiler()
+					.createResource(StandardLocation.CLASS_OUTPUT, "", name, clazz).openWriter()) {
+				StringBuilder seedsLine = new StringBuilder("seeds");
+				for (int seed: seeds) {seedsLine.append(' ').append(seed);}
+				w.write(seedsLine + "\n");
+
+				for (String line: lines) {w.write(line + "\n");}
+			}
+			catch (IOException e) {
+				environment.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"Symbols' index not written: " + e.getMessage(), clazz);
+			}
+		}
+
+		/**
+		 * Returns the flat type name of a method's symbol, specialized if its parameters and
+		 * result are all of the same primitive type (<b><code>double</code></b>,
+		 * <b><code>long</code></b> or <b><code>int</code></b>).
+		 */
+		private String symbolType(JCMethodDecl met) {
+			Type result = met.sym.getReturnType();
+			Class<?> symbolType;
+
+			if (result.hasTag(TypeTag.DOUBLE))
+				symbolType = DoubleMethodSymbol.class;
+			else if (result.hasTag(TypeTag.LONG))
+				symbolType = LongMethodSymbol.class;
+			else if (result.hasTag(TypeTag.INT))
+				symbolType = IntMethodSymbol.class;
+			else
+				return MethodSymbol.class.getName();
+
+			for (VarSymbol param: met.sym.getParameters()) {
+				if (!param.type.hasTag(result.getTag()))
+					return MethodSymbol.class.getName();
+			}
+			return symbolType.getName();
+		}
+
 		/**
 		 * Generates a symbolic field declaration representing a member (field or method).<br>
+		 * The member is given by class constants (<code>MyClass.class</code>, <code>int.class</code>),
+		 * resolved once by the JVM, unless it comes from another class only known by its name.
 		 * 
 		 * @param symbolTypeName : generated symbolic field's flat type name
-		 * (<b><code>symprog.FieldSymbol</code></b> or <b><code>symprog.MethodSymbol</code></b>)
+		 * (<b><code>symprog.FieldSymbol</code></b>, <b><code>symprog.MethodSymbol</code></b> or
+		 * one of its primitive specializations)
 		 * @param symbolic : member's symbolic annotation
-		 * @param className : member's flat class name
-		 * (ex. <b><code>mypackage.MyClass$MyInner</code></b>)
+		 * @param clazz : member's class
 		 * @param name : member's name
 		 * @param flags : member's access flags
 		 * @param position : member's position
-		 * @param params : method's parameter types; compatible with <b><code>Class.forName()</code></b>,
-		 * <b><code>null</code></b> for fields
+		 * @param params : method's erased parameter types, <b><code>null</code></b> for fields
+		 * @param index : member's index in the accessor of its class, negative if it has none
 		 * 
 		 * @return symbolic field's declaration
 		 */
 		private JCVariableDecl generateSymbol(
 				String symbolTypeName,
 				Symbolic symbolic,
-				String className,
+				ClassSymbol clazz,
 				String name,
 				long flags,
 				int position,
-				List<String> params
+				List<Type> params,
+				int index
 		) {
-			className = symbolic.origin().isEmpty() ? className : symbolic.origin();
-
-			JCExpression[] symbolParams = new JCExpression[] {
-					nodes.Literal(className),
-					nodes.Literal(name)
-			};
-			List<JCExpression> paramslist = List.from(symbolParams);
-
-			if(params != null) {
-				List<JCExpression> erasures = List.nil();
-				
-				for (String param: params) {
-					erasures = erasures.append(nodes.Literal(param));
+			List<JCExpression> paramslist;
+
+			if (symbolic.origin().isEmpty()) {
+				paramslist = List.of(nodes.ClassLiteral(types.erasure(clazz.type)), nodes.Literal(name));
+
+				if (params != null) {
+					List<JCExpression> erasures = List.nil();
+
+					for (Type param: params) {
+						erasures = erasures.append(nodes.ClassLiteral(param));
+					}
+
+					// new Class<?>[] {...}, not raw
+					JCExpression classType = nodes.TypeApply(
+							nodes.QualIdent(symtab.classType.tsym),
+							List.of(nodes.Wildcard(nodes.TypeBoundKind(BoundKind.UNBOUND), null)));
+
+					paramslist = paramslist.append(nodes.NewArray(
+							classType,
+							List.nil(),
+							erasures));
+					paramslist = paramslist.append(nodes.Literal(symbolic.pure()));
+				}
+
+				paramslist = paramslist.append(index >= 0 ?
+						nodes.NewClass(null, null, nodes.Ident(names.fromString(ACCESSOR)), List.nil(), null) :
+						nodes.Literal(TypeTag.BOT, null));
+				paramslist = paramslist.append(nodes.Literal(index));
+			}
+			else {
+				paramslist = List.of(nodes.Literal(symbolic.origin()), nodes.Literal(name));
+
+				if (params != null) {
+					List<JCExpression> erasures = List.nil();
+
+					for (Type param: params) {
+						erasures = erasures.append(nodes.Literal(translate(param)));
+					}
+
+					paramslist = paramslist.append(nodes.NewArray(
+							nodes.Type(symtab.stringType),
+							List.nil(),
+							erasures));
+
+					if (symbolic.pure())
+						paramslist = paramslist.append(nodes.Literal(true));
 				}
-				
-				paramslist = paramslist.append(nodes.NewArray(
-						nodes.Type(symtab.stringType),
-						List.nil(),
-						erasures));
 			}
 
 			ClassSymbol cs = classes.loadClass(names.fromString(symbolTypeName));
@@ -202,6 +440,185 @@ public class SymProc extends AbstractProcessor {
 					newSymbol);
 		}
 
+		/**
+		 * Generates the case of the accessor's dispatch that directly invokes a method, or reads a
+		 * field, of the class, for example:<br>
+		 * <code>case 0: return ((MyClass)instance).myMethod(toInt(args[0]), (String)args[1]);</code><br>
+		 * The arguments are <code>a</code>, <code>b</code> and <code>c</code> in the dispatch
+		 * of a fixed arity.
+		 */
+		private JCCase generateAccess(JCClassDecl clazz, JCTree decl, int index, boolean fixed) {
+			nodes.at(decl.pos);
+
+			boolean isStatic;
+			Name name;
+			if (decl instanceof JCMethodDecl) {
+				isStatic = (((JCMethodDecl) decl).sym.flags() & Flags.STATIC) != 0;
+				name = ((JCMethodDecl) decl).name;
+			}
+			else {
+				isStatic = (((JCVariableDecl) decl).sym.flags() & Flags.STATIC) != 0;
+				name = ((JCVariableDecl) decl).name;
+			}
+
+			JCExpression receiver = isStatic ?
+					nodes.QualIdent(clazz.sym) :
+					nodes.Parens(nodes.TypeCast(
+							nodes.Type(types.erasure(clazz.sym.type)),
+							nodes.Ident(names.fromString("instance"))));
+			JCExpression member = nodes.Select(receiver, name);
+
+			if (decl instanceof JCVariableDecl)
+				return nodes.Case(nodes.Literal(index), List.of(nodes.Return(member)));
+
+			JCMethodDecl met = (JCMethodDecl) decl;
+			List<JCExpression> args = List.nil();
+			int i = 0;
+
+			for (VarSymbol param: met.sym.getParameters()) {
+				JCExpression arg = fixed ?
+						nodes.Ident(names.fromString(FIXED_ARGS[i++])) :
+						nodes.Indexed(nodes.Ident(names.fromString("args")), nodes.Literal(i++));
+				Type erasure = param.erasure(types);
+
+				if (erasure.isPrimitive()) {
+					// Unboxed and widened as by reflection
+					String type = erasure.tsym.name.toString();
+					String conversion = "to" + Character.toUpperCase(type.charAt(0)) + type.substring(1);
+					args = args.append(nodes.Apply(null, nodes.Ident(names.fromString(conversion)), List.of(arg)));
+				}
+				else if (types.isSameType(erasure, symtab.objectType)) {
+					args = args.append(arg);
+				}
+				else {
+					args = args.append(nodes.TypeCast(nodes.Type(erasure), arg));
+				}
+			}
+
+			JCExpression call = nodes.Apply(null, member, args);
+			List<JCStatement> stats = met.sym.getReturnType().hasTag(TypeTag.VOID) ?
+					List.of(nodes.Exec(call), nodes.Return(nodes.Literal(TypeTag.BOT, null))) :
+					List.<JCStatement>of(nodes.Return(call));
+
+			return nodes.Case(nodes.Literal(index), stats);
+		}
+
+		/**
+		 * Generates the accessor of the class' symbolic members (see {@link Accessor}), nested in
+		 * it so that it can directly access the private ones:<br>
+		 * <code>private static final class $Accessor extends symprog.Accessor {<br>
+		 * &nbsp;&nbsp;protected Object access(int member, Object instance, Object[] args) throws Throwable {<br>
+		 * &nbsp;&nbsp;&nbsp;&nbsp;switch (member) {...}<br>
+		 * &nbsp;&nbsp;&nbsp;&nbsp;throw new IllegalArgumentException();<br>
+		 * &nbsp;&nbsp;}<br>
+		 * &nbsp;&nbsp;protected Object access1(int member, Object instance, Object a) throws Throwable {...}<br>
+		 * }</code><br>
+		 * The dispatches of the fixed arities only cover the members of their arity (fields
+		 * being read by <code>access0</code>).
+		 */
+		private JCClassDecl generateAccessor(JCClassDecl clazz, List<JCTree> accessed) {
+			List<JCTree> defs = List.nil();
+			for (int arity=-1; arity<=FIXED_ARGS.length; arity++) { // Arguments array first
+				nodes.at(clazz.pos);
+				List<JCVariableDecl> params = List.of(parameter("member", nodes.TypeIdent(TypeTag.INT)),
+						parameter("instance", nodes.Type(symtab.objectType)));
+				if (arity < 0)
+					params = params.append(parameter("args", nodes.TypeArray(nodes.Type(symtab.objectType))));
+				for (int i=0; i<arity; i++)
+					params = params.append(parameter(FIXED_ARGS[i], nodes.Type(symtab.objectType)));
+
+				List<JCCase> cases = List.nil();
+				int index = 0;
+				for (JCTree decl: accessed) {
+					int members = decl instanceof JCMethodDecl ? ((JCMethodDecl) decl).params.size() : 0;
+					if (arity < 0 || members == arity)
+						cases = cases.append(generateAccess(clazz, decl, index, arity >= 0));
+					index++;
+				}
+
+				nodes.at(clazz.pos);
+				if (!cases.isEmpty())
+					defs = defs.append(generateDispatch(arity < 0 ? "access" : "access" + arity, params, cases));
+			}
+
+			// Erased arguments of generic members
+			JCAnnotation unchecked = nodes.Annotation(
+					nodes.QualIdent(classes.loadClass(names.fromString(SuppressWarnings.class.getName()))),
+					List.of(nodes.Literal("unchecked")));
+
+			return nodes.ClassDef(
+					nodes.Modifiers(nestedFlags(clazz), List.of(unchecked)),
+					names.fromString(ACCESSOR),
+					List.nil(),
+					nodes.QualIdent(classes.loadClass(names.fromString(Accessor.class.getName()))),
+					List.nil(),
+					defs);
+		}
+
+		private JCVariableDecl parameter(String name, JCExpression type) {
+			return nodes.VarDef(nodes.Modifiers(Flags.PARAMETER), names.fromString(name), type, null);
+		}
+
+		// Dispatch of the accessor, switching on the member's index.
+		private JCMethodDecl generateDispatch(String name, List<JCVariableDecl> params, List<JCCase> cases) {
+			JCBlock body = nodes.Block(0, List.of(
+					nodes.Switch(nodes.Ident(names.fromString("member")), cases),
+					nodes.Throw(nodes.NewClass(
+							null, null,
+							nodes.QualIdent(classes.loadClass(names.fromString(IllegalArgumentException.class.getName()))),
+							List.nil(),
+							null))));
+
+			return nodes.MethodDef(
+					nodes.Modifiers(Flags.PROTECTED),
+					names.fromString(name),
+					nodes.Type(symtab.objectType),
+					List.nil(),
+					params,
+					List.of(nodes.Type(symtab.throwableType)),
+					body,
+					null);
+		}
+
+		/**
+		 * Generates the static method giving a lazy symbol, with the access flags of its field:<br>
+		 * <code>public static MethodSymbol $myMethod() {return $Symbols.$myMethod;}</code><br>
+		 * The field is moved to the holder of the class' lazy symbols, see {@link #generateHolder}.
+		 */
+		private JCMethodDecl generateLazySymbol(JCVariableDecl symbol) {
+			nodes.at(symbol.pos);
+
+			JCStatement get = nodes.Return(nodes.Select(nodes.Ident(names.fromString(HOLDER)), symbol.name));
+			return nodes.MethodDef(
+					nodes.Modifiers(symbol.mods.flags & Flags.AccessFlags | Flags.STATIC),
+					symbol.name,
+					new TreeCopier<Void>(nodes).copy(symbol.vartype),
+					List.nil(),
+					List.nil(),
+					List.nil(),
+					nodes.Block(0, List.of(get)),
+					null);
+		}
+
+		/**
+		 * Generates the holder of the class' lazy symbols, initialized by the JVM on first access
+		 * to one of them:<br>
+		 * <code>private static final class $Symbols {static final MethodSymbol $myMethod = ...;}</code>
+		 */
+		private JCClassDecl generateHolder(JCClassDecl clazz, List<JCTree> symbols) {
+			for (JCTree symbol: symbols) {
+				((JCVariableDecl) symbol).mods = nodes.Modifiers(Flags.STATIC | Flags.FINAL);
+			}
+
+			return nodes.at(clazz.pos).ClassDef(
+					nodes.Modifiers(nestedFlags(clazz)),
+					names.fromString(HOLDER),
+					List.nil(),
+					null,
+					List.nil(),
+					symbols);
+		}
+
 		private String translate(Type type) {
 			String trim = "";
 
@@ -217,8 +634,6 @@ public class SymProc extends AbstractProcessor {
 				trim = type.tsym.flatName().toString().trim();
 			}
 
-			System.out.println(" |-" + trim);
-
 			return trim;
 		}
 
@@ -15,7 +15,12 @@
  */
 package symprog;
 
+import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
 /**
  * Symbolic view of class members.
@@ -24,16 +29,215 @@ import java.lang.reflect.*;
  *
  */
 public abstract class Symbol<T extends AccessibleObject> extends Term {
-	protected final String CLASS_NAME;
-	protected final String NAME;
+	final Descriptor<T> DESCRIPTOR; // Shared by all the symbols of the member
 	
 	protected Symbol(String class_name, String name) {
-		CLASS_NAME = class_name;
-		NAME = name;
+		this(Descriptor.<T>of(class_name, name, null, false, null));
 	}
+
+	Symbol(Descriptor<T> descriptor) {
+		DESCRIPTOR = descriptor;
+	}
+
+	protected String className() {return DESCRIPTOR.CLASS_NAME;}
+
+	protected String name() {return DESCRIPTOR.NAME;}
 	
+	/**
+	 * Symbols are equal if they're of the same kind and represent the same member, quoted or
+	 * not. Derived symbols add their own properties (bound instance, terms).
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {return true;}
+		if (o == null || o.getClass() != getClass()) {return false;}
+
+		Symbol<?> s = (Symbol<?>)o;
+		return quoted == s.quoted && (DESCRIPTOR == s.DESCRIPTOR || DESCRIPTOR.same(s.DESCRIPTOR));
+	}
+
+	@Override
+	public int hashCode() {return DESCRIPTOR.HASH * 2 + (quoted ? 1 : 0);}
+
 	@Override
-	public String toString() {return quoted ? "'" + NAME : NAME;}
+	public String toString() {return quoted ? "'" + DESCRIPTOR.NAME : DESCRIPTOR.NAME;}
 	
 	public abstract T reflect() throws ClassNotFoundException, NoSuchFieldException, NoSuchMethodException;
+
+	/**
+	 * Returns the accessible member, reflected only once for this symbol and all the
+	 * symbols derived from it.<br>
+	 * Unlike {@link #reflect()}, the returned object is shared and mustn't be modified.
+	 */
+	protected T resolve() throws ClassNotFoundException, NoSuchFieldException, NoSuchMethodException {
+		T member = DESCRIPTOR.member;
+		if (member == null) {
+			member = reflect();
+			member.setAccessible(true);
+			DESCRIPTOR.member = member;
+		}
+		return member;
+	}
+
+	/**
+	 * Returns the invocation engine of the member, built only once as well.<br>
+	 * Members having an accessor aren't resolved.
+	 */
+	Invoker invoker() throws ClassNotFoundException, NoSuchFieldException, NoSuchMethodException {
+		Invoker invoker = DESCRIPTOR.invoker;
+		if (invoker == null) {
+			Accessor accessor = DESCRIPTOR.accessor;
+			invoker = accessor != null ? Invoker.of(accessor, DESCRIPTOR.index, this) : Invoker.of(resolve());
+			DESCRIPTOR.invoker = invoker;
+		}
+		return invoker;
+	}
+
+	// Memoized results of the member, shared as the resolution is.
+	Cache cache() {
+		Cache cache = DESCRIPTOR.cache;
+		if (cache == null) {
+			synchronized (DESCRIPTOR) {
+				cache = DESCRIPTOR.cache;
+				if (cache == null) {
+					cache = new Cache();
+					DESCRIPTOR.cache = cache;
+				}
+			}
+		}
+		return cache;
+	}
+
+	// Symbols are evaluated once per batch, impure methods and expressions override it.
+	@Override
+	Object[] evaluateColumn(Object instance, Environment.Batch batch) throws SymbolicException {
+		return new Object[] {evaluate(instance)};
+	}
+
+	/**
+	 * Description of a member, shared by all the symbols representing it along with its
+	 * resolution (and memoized results).<br>
+	 * Descriptors are interned, but only weakly referenced by the tables, so a resolved member
+	 * never keeps its class and class loader reachable longer than the symbols do. Members given
+	 * by class constants are interned per class, since classes of the same name loaded by
+	 * different class loaders have distinct members. Members given by names are interned by
+	 * name and resolved once, by name.
+	 * Concurrent resolutions are harmless: they all yield the same member.
+	 */
+	static final class Descriptor<T extends AccessibleObject> {
+		private static final Map<Descriptor<?>, WeakReference<Descriptor<?>>> DESCRIPTORS = new WeakHashMap<>();
+		private static final ClassValue<Map<Descriptor<?>, WeakReference<Descriptor<?>>>> CLASS_DESCRIPTORS =
+				new ClassValue<Map<Descriptor<?>, WeakReference<Descriptor<?>>>>() {
+			@Override
+			protected Map<Descriptor<?>, WeakReference<Descriptor<?>>> computeValue(Class<?> c) {
+				return new WeakHashMap<>();
+			}
+		};
+
+		final String CLASS_NAME;
+		final String NAME;
+		final String[] PARAMS; // Of methods only, mustn't be modified
+		final boolean PURE; // Free of side effects
+		final Class<?> PRIMITIVE; // Type of all the parameters and of the result, if primitive
+		private final int HASH;
+
+		private volatile T member;
+		private volatile Invoker invoker;
+		private volatile Cache cache;
+		private volatile Accessor accessor; // Generated by SymProc, if any
+		private int index;
+		private final Class<?> DECLARING; // Given by constants, if any
+		private final Class<?>[] TYPES; // Mustn't be modified
+
+		private Descriptor(String class_name, String name, String[] params, boolean pure, Class<?> primitive,
+				Class<?> declaring, Class<?>[] types) {
+			CLASS_NAME = class_name;
+			NAME = name;
+			PARAMS = params;
+			PURE = pure;
+			PRIMITIVE = primitive;
+			HASH = 31 * (31 * class_name.hashCode() + name.hashCode()) + Arrays.hashCode(params);
+			DECLARING = declaring;
+			TYPES = types;
+		}
+
+		// Canonical descriptor.
+		static <T extends AccessibleObject> Descriptor<T> of(String class_name, String name,
+				String[] params, boolean pure, Class<?> primitive) {
+			Descriptor<T> d = new Descriptor<>(class_name, name, params, pure, primitive, null, null);
+			return intern(DESCRIPTORS, d, () -> new Descriptor<>(class_name, name,
+					params != null ? params.clone() : null, pure, primitive, null, null));
+		}
+
+		/**
+		 * Canonical descriptor of a member given by class constants (<code>MyClass.class</code>),
+		 * which the JVM resolves once, rather than by names.
+		 */
+		static <T extends AccessibleObject> Descriptor<T> of(Class<?> clazz, String name,
+				Class<?>[] params, boolean pure, Class<?> primitive) {
+			String[] names = null;
+			if (params != null) {
+				names = new String[params.length];
+				for (int i=0; i<params.length; i++) {names[i] = params[i].getName();}
+			}
+
+			Descriptor<T> d = new Descriptor<>(clazz.getName(), name, names, pure, primitive, clazz,
+					params != null ? params.clone() : null);
+			return intern(CLASS_DESCRIPTORS.get(clazz), d, () -> d);
+		}
+
+		// Descriptor of the table equal to the given one, the canonical one being added if none.
+		@SuppressWarnings("unchecked")
+		private static synchronized <T extends AccessibleObject> Descriptor<T> intern(
+				Map<Descriptor<?>, WeakReference<Descriptor<?>>> table, Descriptor<T> d,
+				Supplier<Descriptor<T>> canonical) {
+			WeakReference<Descriptor<?>> ref = table.get(d);
+			Descriptor<?> interned = ref != null ? ref.get() : null;
+			if (interned == null) {
+				interned = canonical.get();
+				table.put(interned, new WeakReference<>(interned));
+			}
+			return (Descriptor<T>)interned;
+		}
+
+		// Declaring class, loaded by name unless given.
+		Class<?> declaringClass() throws ClassNotFoundException {
+			return DECLARING != null ? DECLARING : Class.forName(CLASS_NAME);
+		}
+
+		// Parameter types of methods, null unless given; mustn't be modified.
+		Class<?>[] parameterTypes() {return TYPES;}
+
+		/**
+		 * Whether the descriptors represent the same member, a member given by names being the
+		 * same as the one given by constants whatever its class loader.
+		 */
+		boolean same(Descriptor<?> d) {
+			return equals(d) && (DECLARING == null || d.DECLARING == null || DECLARING == d.DECLARING);
+		}
+
+		// The first accessor given for the member is kept, they're all equivalent as they must be
+		// nested in its class.
+		synchronized void access(Accessor accessor, int index) {
+			if (accessor != null && accessor.getClass().getEnclosingClass() != DECLARING)
+				throw new IllegalArgumentException(accessor.getClass().getName() + " isn't nested in " + CLASS_NAME);
+
+			if (accessor != null && this.accessor == null) {
+				this.index = index;
+				this.accessor = accessor;
+			}
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Descriptor)) {return false;}
+
+			Descriptor<?> d = (Descriptor<?>)o;
+			return HASH == d.HASH && CLASS_NAME.equals(d.CLASS_NAME) && NAME.equals(d.NAME) &&
+					Arrays.equals(PARAMS, d.PARAMS) && PURE == d.PURE && PRIMITIVE == d.PRIMITIVE;
+		}
+
+		@Override
+		public int hashCode() {return HASH;}
+	}
 }
@@ -35,4 +35,12 @@ public @interface Symbolic {
 	int flags() default DEFAULT; // Any java.lang.reflect.Modifier, see JVMS 4.5/4.6
 
 	String origin() default ""; // Flat class name
+
+	// Method without side effects, whose arguments may be evaluated concurrently and whose
+	// results may be memoized (see MethodSymbol.ExpressionSymbol).
+	boolean pure() default false;
+
+	// Symbol given by a method (ex. $m() rather than $m), created along with the other lazy ones
+	// of the class on first access rather than at class initialization.
+	boolean lazy() default false;
 }
@@ -22,6 +22,7 @@ package symprog;
  *
  */
 public class SymbolicException extends RuntimeException {
+	public SymbolicException(String message) {super(message);}
 	public SymbolicException(Throwable cause) {super(cause);}
 	public SymbolicException(String message, Throwable cause) {super(message, cause);}
 }
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package symprog;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lookup of the symbols of a class by name.<br>
+ * {@link SymProc} writes along with each class the index of its symbolic members
+ * (<code>META-INF/symprog/</code><i>flat class name</i><code>.symbols</code>), whose entries are
+ * placed by a minimal perfect hash computed at compile time. Finding a symbol then takes
+ * constant time, without scanning the class. Members given with an origin aren't indexed.
+ *
+ * @author Bernard Blaser
+ *
+ */
+public final class Symbols {
+	static final String INDEX = "META-INF/symprog/";
+	static final String EXTENSION = ".symbols";
+
+	private static final int MAX_SEED = 1 << 20; // Tried per bucket
+
+	private static final ClassValue<Index> INDEXES = new ClassValue<Index>() {
+		@Override
+		protected Index computeValue(Class<?> c) {return Index.read(c);}
+	};
+
+	private Symbols() {}
+
+	/**
+	 * Returns the symbol of the given method, or of the given field if there are no parameters
+	 * and no such method, <b><code>null</code></b> if the member isn't indexed.
+	 */
+	public static Symbol<?> lookup(Class<?> c, String name, Class<?>... params) {
+		MethodSymbol method = method(c, name, params);
+		return method != null || params.length > 0 ? method : field(c, name);
+	}
+
+	public static MethodSymbol method(Class<?> c, String name, Class<?>... params) {
+		String[] names = new String[params.length];
+		for (int i=0; i<params.length; i++) {names[i] = params[i].getName();}
+
+		return (MethodSymbol)INDEXES.get(c).symbol(c, key(name, names), name, params);
+	}
+
+	public static FieldSymbol field(Class<?> c, String name) {
+		return (FieldSymbol)INDEXES.get(c).symbol(c, key(name, null), name, null);
+	}
+
+	// Fields are indexed by name, methods by signature: myMethod(int,java.lang.String)
+	static String key(String name, String[] params) {
+		if (params == null) {return name;}
+
+		StringBuilder key = new StringBuilder(name).append('(');
+		for (int i=0; i<params.length; i++) {
+			key.append(i > 0 ? "," : "").append(params[i]);
+		}
+		return key.append(')').toString();
+	}
+
+	// Hash of a key, different for each seed: its characters are hashed from a state given by
+	// the seed, so that keys of the same hashCode() are told apart.
+	private static int hash(String key, int seed) {
+		int h = seed * 0x9E3779B9;
+		for (int i=0; i<key.length(); i++) {h = (h ^ key.charAt(i)) * 0x01000193;}
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h & Integer.MAX_VALUE;
+	}
+
+	/**
+	 * Returns the slot of a key given the seeds of the perfect hash, each bucket having its own.
+	 */
+	static int slot(String key, int[] seeds) {
+		return hash(key, seeds[hash(key, 0) % seeds.length]) % seeds.length;
+	}
+
+	/**
+	 * Computes the seeds of a minimal perfect hash of the given distinct keys ("hash and
+	 * displace"): keys are grouped into buckets, the largest ones being first given a seed that
+	 * places all their keys in free slots.
+	 *
+	 * @return the seeds, <b><code>null</code></b> if a bucket can't be placed by any of the
+	 * seeds tried
+	 */
+	static int[] seeds(String[] keys) {
+		int n = keys.length;
+		List<List<String>> buckets = new ArrayList<>();
+		for (int b=0; b<n; b++) {buckets.add(new ArrayList<>());}
+		for (String key: keys) {buckets.get(hash(key, 0) % n).add(key);}
+
+		Integer[] order = new Integer[n];
+		for (int b=0; b<n; b++) {order[b] = b;}
+		Arrays.sort(order, (b1, b2) -> buckets.get(b2).size() - buckets.get(b1).size());
+
+		int[] seeds = new int[n];
+		boolean[] taken = new boolean[n];
+		int[] slots = new int[n];
+		for (int b: order) {
+			List<String> bucket = buckets.get(b);
+			if (bucket.isEmpty()) {break;}
+
+			for (int seed=1; ; seed++) {
+				if (seed > MAX_SEED) {return null;}
+
+				int k = 0;
+				for (; k<bucket.size(); k++) {
+					int slot = hash(bucket.get(k), seed) % n;
+					if (taken[slot]) {break;}
+					taken[slot] = true;
+					slots[k] = slot;
+				}
+				if (k == bucket.size()) {
+					seeds[b] = seed;
+					break;
+				}
+				for (int i=0; i<k; i++) {taken[slots[i]] = false;}
+			}
+		}
+		return seeds;
+	}
+
+	/**
+	 * Index of a class, read once. Symbols are created on their first lookup, concurrent ones
+	 * yielding equal symbols.
+	 */
+	private static final class Index {
+		private static final Index EMPTY = new Index(new int[0], new String[0], new String[0], new boolean[0]);
+
+		private final int[] SEEDS;
+		private final String[] KEYS;
+		private final String[] TYPES; // Flat names of the symbols' classes
+		private final boolean[] PURE;
+		private final Symbol<?>[] symbols;
+
+		private Index(int[] seeds, String[] keys, String[] types, boolean[] pure) {
+			SEEDS = seeds;
+			KEYS = keys;
+			TYPES = types;
+			PURE = pure;
+			symbols = new Symbol<?>[keys.length];
+		}
+
+		/**
+		 * Reads the index of the class:<br>
+		 * <code>seeds s1 ... sn</code><br>
+		 * then one line per slot: <code>symbol_type modifiers pure|impure key</code>
+		 */
+		private static Index read(Class<?> c) {
+			InputStream in = c.getResourceAsStream("/" + INDEX + c.getName() + EXTENSION);
+			if (in == null) {return EMPTY;}
+
+			try (BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+				String[] seeds = r.readLine().split(" ");
+				int n = seeds.length - 1;
+				Index index = new Index(new int[n], new String[n], new String[n], new boolean[n]);
+				for (int i=0; i<n; i++) {
+					index.SEEDS[i] = Integer.parseInt(seeds[i + 1]);
+
+					String[] entry = r.readLine().split(" ");
+					index.TYPES[i] = entry[0];
+					index.PURE[i] = entry[2].equals("pure");
+					index.KEYS[i] = entry[3];
+				}
+				return index;
+			}
+			catch (IOException | RuntimeException e) {return EMPTY;} // Unreadable, as if missing
+		}
+
+		private Symbol<?> symbol(Class<?> c, String key, String name, Class<?>[] params) {
+			if (KEYS.length == 0) {return null;}
+
+			int slot = slot(key, SEEDS);
+			if (!KEYS[slot].equals(key)) {return null;}
+
+			Symbol<?> symbol = symbols[slot];
+			if (symbol == null) {
+				symbol = create(TYPES[slot], c, name, params, PURE[slot]);
+				symbols[slot] = symbol;
+			}
+			return symbol;
+		}
+
+		private static Symbol<?> create(String type, Class<?> c, String name, Class<?>[] params, boolean pure) {
+			switch (type) {
+				case "symprog.FieldSymbol": return new FieldSymbol(c, name, null, -1);
+				case "symprog.DoubleMethodSymbol": return new DoubleMethodSymbol(c, name, params, pure, null, -1);
+				case "symprog.LongMethodSymbol": return new LongMethodSymbol(c, name, params, pure, null, -1);
+				case "symprog.IntMethodSymbol": return new IntMethodSymbol(c, name, params, pure, null, -1);
+				default: return new MethodSymbol(c, name, params, pure, null, -1);
+			}
+		}
+	}
+}
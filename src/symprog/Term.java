@@ -15,22 +15,39 @@
  */
 package symprog;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
- * Symbolic expression's term.
+ * Symbolic expression's term.<br>
+ * Values, symbols and expressions are compared structurally, so trees used as keys of hash
+ * tables (see {@link Interner}) mustn't be mutated while they are.
  * 
  * @author Bernard Blaser
  *
  */
 public abstract class Term implements Cloneable {
 	public static class List {
+		private static final AtomicLong STAMPS = new AtomicLong();
+
 		public static final List NIL = new List(new Term[0]);
 
 		private final Term[] TERMS;
-		protected List(Term... terms) {TERMS=terms;}
+		private volatile long version = STAMPS.incrementAndGet();
+		private java.util.List<WeakReference<List>> parents; // Lists holding an owner of this one
+		private int pruning; // Number of parents from which the collected ones are pruned
+
+		protected List(Term... terms) {
+			TERMS=terms;
+			for (Term t: TERMS) {adopt(t);}
+		}
 
 		public int size() {return TERMS.length;}
 		// Fast (imperative) indexed terms' access.
@@ -38,11 +55,16 @@ public abstract class Term implements Cloneable {
 		public Term set(int i, Term t) { // Returns the old Term
 			Term old=TERMS[i];
 			TERMS[i]=t;
+			adopt(t);
+			modified();
 			return old;
 		}
 		public void set(Term... terms) {
-			for (int i=0; i<TERMS.length && i<terms.length; i++)
+			for (int i=0; i<TERMS.length && i<terms.length; i++) {
 				TERMS[i] = terms[i];
+				adopt(terms[i]);
+			}
+			modified();
 		}
 
 		// Iterative or functional terms' access (stream doesn't need to be closed).
@@ -52,24 +74,298 @@ public abstract class Term implements Cloneable {
 		public void set(Stream<Term> stream) {
 			set(stream.toArray(l->new Term[l]));
 		}
+
+		/**
+		 * Version of this list and of the whole tree below it, changed by every mutation of one
+		 * of them. Caches depending on a tree (like its compiled form) are only valid as long as
+		 * this version doesn't change.
+		 */
+		long version() {return version;}
+
+		Term[] array() {return TERMS;}
+
+		// Registers this list as a parent of the given term's terms, weakly since subtrees
+		// are freely shared and mustn't keep their former parents alive. The collected parents
+		// are pruned once their number has doubled, so that adopting costs a constant amortized
+		// time even for terms shared by many expressions.
+		private void adopt(Term t) {
+			List child = t != null ? t.terms() : NIL;
+			if (child == NIL || child == this) {return;}
+
+			synchronized (child) {
+				if (child.parents == null) {
+					child.parents = new ArrayList<>(1);
+				}
+				else if (child.parents.size() >= child.pruning) {
+					child.parents.removeIf(p -> p.get() == null);
+					child.pruning = Math.max(8, 2 * child.parents.size());
+				}
+
+				child.parents.add(new WeakReference<>(this));
+			}
+		}
+
+		// Changes the version of this list and all its ancestors (once each, even if shared).
+		private void modified() {
+			long stamp = STAMPS.incrementAndGet();
+			Deque<List> lists = new ArrayDeque<>();
+			lists.push(this);
+
+			while (!lists.isEmpty()) {
+				List l = lists.pop();
+				if (l.version == stamp) {continue;}
+
+				l.version = stamp;
+				synchronized (l) {
+					if (l.parents != null) {
+						for (WeakReference<List> p: l.parents) {
+							List parent = p.get();
+							if (parent != null) {lists.push(parent);}
+						}
+					}
+				}
+			}
+		}
 	}
 
 	public boolean atomic() {return terms().size() == 0;}
 	public List terms() {return List.NIL;}
 
-	protected boolean quoted = false; // Prevents evaluation
+	// Prevents evaluation, immutable once the quoted copy is made so that trees can be
+	// shared and evaluated concurrently.
+	protected boolean quoted = false;
+	private Term unquoted; // Original term of a quoted copy
+
 	public Term quote() throws SymbolicException {
 		try {
 			Term t = (Term)clone();
 			t.quoted=true;
+			t.unquoted=unquote();
 			return t;
 		}
 		catch (Exception e) {throw new SymbolicException(e);}
 	}
 
+	// Term passed to the functions for which it is quoted.
+	Term unquote() {return quoted ? unquoted : this;}
+
+	/**
+	 * Returns a copy of this tree that isn't affected by later mutations of this one, sharing
+	 * the terms without terms of their own (which aren't mutable).
+	 */
+	public Term copy() throws SymbolicException {return this;}
+
+	/**
+	 * Returns the term at the given path below this one, made of the indexes of the terms
+	 * from this one down to it.
+	 */
+	public Term at(int... path) throws SymbolicException {
+		Term t = this;
+		for (int i: path) {t = term(t, i);}
+		return t;
+	}
+
+	/**
+	 * Returns a new tree where the term at the given path (see {@link #at}) is replaced,
+	 * neither this tree nor any of its subtrees being mutated.<br>
+	 * Only the expressions along the path are copied, all the other subtrees being shared with
+	 * this tree. Trees only edited this way can therefore safely share their subtrees.
+	 */
+	public Term with(Term replacement, int... path) throws SymbolicException {
+		Term[] ancestors = new Term[path.length];
+		Term t = this;
+		for (int k=0; k<path.length; k++) {
+			ancestors[k] = t;
+			t = term(t, path[k]);
+		}
+
+		t = replacement;
+		for (int k=path.length-1; k>=0; k--) {
+			Term[] terms = ancestors[k].terms().array().clone();
+			terms[path[k]] = t;
+			t = ((MethodSymbol.ExpressionSymbol)ancestors[k]).rebuild(terms);
+		}
+		return t;
+	}
+
+	private static Term term(Term t, int i) throws SymbolicException {
+		if (i < 0 || i >= t.terms().size())
+			throw new SymbolicException("no term " + i + " in " + t);
+
+		return t.terms().get(i);
+	}
+
 	public abstract Object evaluate(Object instance) throws SymbolicException;
 
 	public Object evaluate() throws SymbolicException {
-		return evaluate(null);
+		return evaluate((Object)null);
+	}
+
+	/**
+	 * Evaluates this term, variables taking their values from the given environment.<br>
+	 * Terms that don't deal with variables (nor have terms that might) can ignore it.
+	 */
+	public Object evaluate(Object instance, Environment env) throws SymbolicException {
+		return evaluate(instance);
+	}
+
+	public Object evaluate(Environment env) throws SymbolicException {
+		return evaluate(null, env);
+	}
+
+	/**
+	 * Evaluates this term to a primitive value, widened as by reflection if needed.<br>
+	 * Trees of primitive symbols (see {@link DoubleMethodSymbol}) are evaluated without boxing
+	 * once compiled.
+	 */
+	public double evaluateAsDouble(Object instance, Environment env) throws SymbolicException {
+		return asDouble(evaluate(instance, env));
+	}
+
+	public double evaluateAsDouble(Environment env) throws SymbolicException {
+		return evaluateAsDouble(null, env);
+	}
+
+	public long evaluateAsLong(Object instance, Environment env) throws SymbolicException {
+		return asLong(evaluate(instance, env));
+	}
+
+	public long evaluateAsLong(Environment env) throws SymbolicException {
+		return evaluateAsLong(null, env);
+	}
+
+	public int evaluateAsInt(Object instance, Environment env) throws SymbolicException {
+		return asInt(evaluate(instance, env));
+	}
+
+	public int evaluateAsInt(Environment env) throws SymbolicException {
+		return evaluateAsInt(null, env);
+	}
+
+	// Conversions of this term's evaluations.
+	final double asDouble(Object value) throws SymbolicException {
+		try {
+			return (double)Compiler.TO_DOUBLE.invokeExact(value);
+		}
+		catch (ClassCastException | NullPointerException e) {throw notA(value, double.class);}
+		catch (Throwable t) {throw new SymbolicException(t);}
+	}
+
+	final long asLong(Object value) throws SymbolicException {
+		try {
+			return (long)Compiler.TO_LONG.invokeExact(value);
+		}
+		catch (ClassCastException | NullPointerException e) {throw notA(value, long.class);}
+		catch (Throwable t) {throw new SymbolicException(t);}
+	}
+
+	final int asInt(Object value) throws SymbolicException {
+		try {
+			return (int)Compiler.TO_INT.invokeExact(value);
+		}
+		catch (ClassCastException | NullPointerException e) {throw notA(value, int.class);}
+		catch (Throwable t) {throw new SymbolicException(t);}
+	}
+
+	private SymbolicException notA(Object value, Class<?> type) {
+		return new SymbolicException(this + " evaluates to " + value + ", not a " + type);
+	}
+
+	/**
+	 * Evaluates this term for every row of the batch, which must give numbers.<br>
+	 * The tree is evaluated node by node over the whole batch rather than row by row, and
+	 * pure subtrees that don't depend on the batch's columns are evaluated only once. Impure
+	 * functions are invoked once per row, though node by node rather than row by row.<br>
+	 * Columns of doubles flow unboxed through the nodes of primitive symbols
+	 * (see {@link DoubleMethodSymbol}).
+	 */
+	public double[] evaluateBatch(Object instance, Environment.Batch batch) throws SymbolicException {
+		double[] results = new double[batch.size()];
+		if (results.length == 0) {return results;}
+
+		Object unboxed = evaluateUnboxed(instance, batch);
+		if (unboxed instanceof double[]) {
+			double[] values = (double[])unboxed;
+			if (values.length == 1)
+				Arrays.fill(results, values[0]);
+			else
+				System.arraycopy(values, 0, results, 0, results.length);
+			return results;
+		}
+
+		Object[] column = (Object[])unboxed;
+		for (int i=0; i<results.length; i++) {
+			Object result = column[column.length == 1 ? 0 : i];
+			if (!(result instanceof Number))
+				throw new SymbolicException(this + " evaluates to " + result + ", not a number");
+
+			results[i] = ((Number)result).doubleValue();
+		}
+		return results;
+	}
+
+	public double[] evaluateBatch(Environment.Batch batch) throws SymbolicException {
+		return evaluateBatch(null, batch);
+	}
+
+	/**
+	 * Evaluates this term for every row of the batch, returning a single value if it's the same
+	 * for all of them. By default, rows are evaluated one by one in their own environment.
+	 */
+	Object[] evaluateColumn(Object instance, Environment.Batch batch) throws SymbolicException {
+		Object[] column = new Object[batch.size()];
+		for (int i=0; i<column.length; i++) {
+			column[i] = evaluate(instance, batch.row(i));
+		}
+		return column;
+	}
+
+	// Evaluations of this term as by evaluateColumn(), possibly given unboxed in a double[] column.
+	Object evaluateUnboxed(Object instance, Environment.Batch batch) throws SymbolicException {
+		return evaluateColumn(instance, batch);
+	}
+
+	/**
+	 * Returns an equivalent tree where the subtrees of pure functions whose leaves are all
+	 * constant (values, pure symbols without parameters, final fields and the variables bound by
+	 * the given environment) are replaced once for all by the value they evaluate to.<br>
+	 * The environment (possibly null) gives the values of some of the variables, the others
+	 * being left free. Subtrees whose evaluation fails are kept to fail when evaluated, and the
+	 * unchanged ones are shared with this tree.
+	 */
+	public Term fold(Object instance, Environment env) throws SymbolicException {return this;}
+
+	public Term fold(Environment env) throws SymbolicException {
+		return fold(null, env);
+	}
+
+	public Term fold() throws SymbolicException {
+		return fold(null, null);
+	}
+
+	/**
+	 * Compiles this term into an equivalent one evaluated without interpretation.<br>
+	 * The compiled term is a snapshot: later mutations of this term's tree aren't reflected.
+	 */
+	public Term compile() throws SymbolicException {
+		return new Compiler.Compiled(this);
+	}
+
+	// (Object instance, Environment env)Object handle equivalent to evaluate(instance, env).
+	MethodHandle handle() {return Compiler.interpreted(this);}
+
+	// Number of nodes of this term's tree if its evaluation has no side effects and only depends
+	// on its instance and environment, negative otherwise.
+	int weight() {return -1;}
+
+	// Primitive type of this term's evaluations if it's statically known, null otherwise.
+	Class<?> primitive() {return null;}
+
+	// (Object instance, Environment env)type handle, unboxed without allocation for the primitive type.
+	MethodHandle handle(Class<?> type) {return Compiler.convert(handle(), type);}
+
+	// Evaluation by the interpreter only, regardless of any compiled form.
+	Object interpret(Object instance, Environment env) throws SymbolicException {
+		return evaluate(instance, env);
 	}
 }
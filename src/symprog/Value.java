@@ -15,7 +15,10 @@
  */
 package symprog;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.*;
+import java.util.Arrays;
+import java.util.Objects;
 
 /**
  * Symbolic expression's captured value from the execution context.
@@ -35,6 +38,37 @@ public class Value extends Term {
 		return VALUE;
 	}
 
+	@Override
+	Object[] evaluateColumn(Object instance, Environment.Batch batch) throws SymbolicException {
+		return new Object[] {evaluate(instance)};
+	}
+
+	@Override
+	int weight() {return 1;}
+
+	// Whether the captured object is known to be immutable, so that equal values are interchangeable.
+	boolean immutable() {
+		return VALUE == null || VALUE instanceof String || VALUE instanceof Boolean ||
+				VALUE instanceof Character || VALUE instanceof Enum || VALUE instanceof Class ||
+				VALUE instanceof Number && VALUE.getClass().getName().startsWith("java.lang.");
+	}
+
+	@Override
+	MethodHandle handle() {return Compiler.constant(quoted ? this : VALUE);}
+
+	// Values are equal if they capture equal objects.
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) {return true;}
+		if (o == null || o.getClass() != getClass()) {return false;}
+
+		Value v = (Value)o;
+		return quoted == v.quoted && Objects.deepEquals(VALUE, v.VALUE);
+	}
+
+	@Override
+	public int hashCode() {return Arrays.deepHashCode(new Object[] {VALUE}) * 2 + (quoted ? 1 : 0);}
+
 	@Override
 	public String toString() {return quoted ? "'#" : "#";}
 }
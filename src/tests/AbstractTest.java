@@ -31,6 +31,29 @@ public abstract class AbstractTest {
 		nb++;
 	}
 
+	protected void check(Object actual, Object expected, String what) {
+		boolean ok = actual == null ? expected == null : actual.equals(expected);
+		if (!ok) throw new RuntimeException("Error with " + what + ": " + actual + " instead of " + expected);
+		nb++;
+	}
+
+	// Expects a SymbolicException with the given cause (null for none).
+	protected void checkFailure(Term t, Class<? extends Throwable> cause) {
+		try {
+			t.evaluate();
+		}
+		catch (SymbolicException e) {
+			Throwable c = e.getCause();
+			if (c instanceof InvocationTargetException)
+				c = c.getCause();
+			if (cause == null ? c != null : !cause.isInstance(c))
+				throw new RuntimeException("Error with " + t + ": unexpected failure " + c, e);
+			nb++;
+			return;
+		}
+		throw new RuntimeException("Error with " + t + ": no failure");
+	}
+
 	protected void runTests() {
 		try {
 			run();
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Generated accessors tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc AccessorTests.java
+ * @run main/othervm -Dsymprog.compileThreshold=10 AccessorTests
+ */
+
+import symprog.*;
+
+class MyAccesses {
+	static int calls;
+
+	@Symbolic private static int count;
+	@Symbolic private final String name;
+
+	MyAccesses(String name) {this.name = name;}
+
+	@Symbolic private static long widen(long l, double d) {return l + (long)d;}
+	@Symbolic private String greet(String s) {return s + " " + name;}
+	@Symbolic private static void touch() {calls++;}
+	@Symbolic private static String join(String s, Object o, char c) {return s + o + c;}
+	@Symbolic private static Integer fail(Integer i) {throw new IllegalStateException();}
+	@Symbolic private static Object generic(java.util.List<? extends Number> l) {return l.get(0);}
+	@Symbolic private static <T extends Comparable<T>> T max(T a, T b) {return a.compareTo(b) < 0 ? b : a;}
+
+	// Stands for the accessor of members that can't be reflected.
+	static class MissingAccessor extends Accessor {
+		@Override
+		protected Object access(int member, Object instance, Object[] args) {
+			switch (member) {
+				case 0: return toInt(args[0]) + 1;
+				case 1: return "missing";
+			}
+			throw new IllegalArgumentException();
+		}
+	}
+}
+
+public class AccessorTests extends AbstractTest {
+	public static void main(String[] args) {
+		new AccessorTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private static boolean accessed(String className) {
+		try {
+			return Accessor.class.isAssignableFrom(Class.forName(className + "$$Accessor"));
+		}
+		catch (ClassNotFoundException e) {return false;}
+	}
+
+	@Override
+	protected void run() throws Exception {
+		check(accessed("MyAccesses"), true, "generated accessor");
+		check(accessed("AccessorTests"), false, "class without symbolic members");
+		check(Class.forName("MyAccesses$$Accessor").getDeclaredMethod("access3", int.class, Object.class,
+				Object.class, Object.class, Object.class).getReturnType(), Object.class, "fixed arity accessor");
+
+		// Symbols given by constants, the same as the ones given by names
+		check(MyAccesses.$widen, new MethodSymbol("MyAccesses", "widen", new String[] {"long", "double"}), "method symbol");
+		check(MyAccesses.$name, new FieldSymbol("MyAccesses", "name"), "field symbol");
+		check(MyAccesses.$widen.reflect(), MyAccesses.class.getDeclaredMethod("widen", long.class, double.class), "reflected method");
+
+		MyAccesses a = new MyAccesses("world");
+		check(MyAccesses.$widen.build(value((short)1), value('a')).evaluate(), 98L, "widened arguments");
+		check(MyAccesses.$greet.build(value("hello")).evaluate(a), "hello world", "instance method");
+		check(MyAccesses.$name.evaluate(a), "world", "instance field");
+		check(MyAccesses.$join.build(value("a"), value(1), value('c')).evaluate(), "a1c", "three arguments");
+		check(MyAccesses.$count.evaluate(), 0, "static field");
+		check(MyAccesses.$generic.build(value(java.util.Arrays.asList(2))).evaluate(), 2, "erased argument");
+		check(MyAccesses.$max.build(value(1), value(2)).evaluate(), 2, "reflected generic method");
+
+		MyAccesses.calls = 0;
+		check(MyAccesses.$touch.build().evaluate(), null, "void method");
+		check(MyAccesses.calls, 1, "void method calls");
+
+		// Reflection's contract
+		checkFailure(MyAccesses.$widen.build(value(1.), value(1.)), IllegalArgumentException.class);
+		checkFailure(MyAccesses.$widen.build(value(null), value(1.)), IllegalArgumentException.class);
+		checkFailure(MyAccesses.$widen.build(value(1L)), IllegalArgumentException.class);
+		checkFailure(MyAccesses.$join.build(value("a"), value(1), value("c")), IllegalArgumentException.class);
+		checkFailure(MyAccesses.$greet.build(value(1)).bind(a), IllegalArgumentException.class);
+		checkFailure(MyAccesses.$greet.build(value("hello")).bind(this), IllegalArgumentException.class);
+		checkFailure(MyAccesses.$greet.build(value("hello")), NullPointerException.class);
+		checkFailure(MyAccesses.$fail.build(value(1)), IllegalStateException.class);
+		checkFailure(MyAccesses.$fail.build(value(null)), IllegalStateException.class);
+
+		// Compiled trees
+		Term t = MyAccesses.$widen.build(MyAccesses.$widen.build(value(1L), value(2.)), value(3.));
+		for (int i=0; i<20; i++) {
+			check(t.evaluate(), 6L, "compiled tree (evaluation " + i + ")");
+		}
+
+		// Members aren't reflected.
+		Accessor missing = new MyAccesses.MissingAccessor();
+		MethodSymbol inc = new MethodSymbol(MyAccesses.class, "inc", new Class<?>[] {int.class}, false, missing, 0);
+		check(inc.build(value(1)).evaluate(), 2, "unreflected method");
+		check(new FieldSymbol(MyAccesses.class, "missing", missing, 1).evaluate(), "missing", "unreflected field");
+		checkFailure(inc.build(value(1), value(2)), IllegalArgumentException.class);
+
+		// Accessors of other classes are rejected.
+		try {
+			new FieldSymbol(AccessorTests.class, "count", missing, 1);
+			check(false, true, "accessor of another class");
+		}
+		catch (IllegalArgumentException e) {}
+		try {
+			new FieldSymbol(MyAccesses.class, "count", new Accessor() {
+				@Override
+				protected Object access(int member, Object instance, Object[] args) {return -1;}
+			}, 0);
+			check(false, true, "foreign accessor");
+		}
+		catch (IllegalArgumentException e) {}
+		check(MyAccesses.$count.evaluate(), 0, "static field of a rejected accessor");
+	}
+}
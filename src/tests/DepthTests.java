@@ -0,0 +1,135 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/*
+ * @test
+ * @summary Deep trees tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc DepthTests.java
+ * @run main/othervm -Dsymprog.iterativeDepth=20 -Dsymprog.compileThreshold=10 DepthTests
+ */
+
+import symprog.*;
+
+class MyDepths {
+	private final Integer factor;
+
+	MyDepths(Integer factor) {this.factor = factor;}
+
+	@Symbolic private static Integer inc(Integer i) {return i + 1;}
+	@Symbolic(pure=true) private static Integer succ(Integer i) {return i + 1;}
+	@Symbolic private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic private static Integer size(Term t) {return t.terms().size();}
+	@Symbolic private Integer scale(Integer i) {return factor * i;}
+}
+
+public class DepthTests extends AbstractTest {
+	public static void main(String[] args) {
+		new DepthTests().runTests();
+	}
+
+	private static final int DEPTH = 100_000;
+
+	private static Value value(Object v) {return new Value(v);}
+
+	// Chain of increments of the given depth.
+	private static Term chain(Term leaf, int depth) {
+		Term t = leaf;
+		for (int i=0; i<depth; i++) {t = MyDepths.$inc.build(t);}
+		return t;
+	}
+
+	// Chain where every fifth expression is a scale, bound to a factor of 3 every tenth one.
+	private static Term scales(int depth) {
+		MyDepths m3 = new MyDepths(3);
+		Term t = value(1);
+		for (int i=1; i<=depth; i++) {
+			t = i % 10 == 0 ? MyDepths.$scale.bind(m3).build(t) :
+				i % 5 == 0 ? MyDepths.$scale.build(t) : MyDepths.$inc.build(t);
+		}
+		return t;
+	}
+
+	// Evaluation of the scales with a factor of 2, except below the bound ones.
+	private static int scaled(int depth) {
+		int bound = depth - depth % 10, expected = 1;
+		for (int i=1; i<=depth; i++) {
+			expected = i % 5 != 0 ? expected + 1 : i <= bound ? 3 * expected : 2 * expected;
+		}
+		return expected;
+	}
+
+	@Override
+	protected void run() throws Exception {
+		Environment.Scope scope = new Environment.Scope();
+		Environment.Variable x = scope.variable("x");
+		Environment env = scope.environment().set(x, 0);
+
+		Term t = chain(x, DEPTH);
+		check(t.evaluate(env), DEPTH, "deep tree");
+		check(t.evaluate(env), DEPTH, "deep tree reevaluation");
+		Term bottom = t;
+		for (int i=0; i<DEPTH-1; i++) {bottom = bottom.terms().get(0);}
+		bottom.terms().set(0, value(1));
+		check(t.evaluate(env), DEPTH + 1, "mutated deep tree");
+
+		// Deep and shallow terms
+		Term wide = MyDepths.$add.build(chain(value(0), 30), MyDepths.$add.build(chain(x, 10), chain(x, 25)));
+		for (int i=0; i<20; i++) {
+			check(wide.evaluate(env), 65, "deep and shallow terms (evaluation " + i + ")");
+		}
+		check(chain(MyDepths.$size.build(MyDepths.$add.build(x, x).quote()), 30).evaluate(), 32, "quoted argument");
+
+		// Bound instances: the terms of bound expressions are evaluated with their instance.
+		MyDepths m2 = new MyDepths(2);
+		check(scales(60).evaluate(m2), scaled(60), "bound expressions");
+		check(scales(55).evaluate(m2), scaled(55), "bound and unbound expressions");
+
+		// Structure
+		String string = chain(x, DEPTH).toString();
+		check(string.length(), 4 * DEPTH + 1 + DEPTH, "deep representation");
+		check(string.substring(0, 8) + string.charAt(4 * DEPTH) + string.substring(string.length() - 2),
+				"inc(inc(x))", "deep representation");
+		check(chain(x, DEPTH).equals(chain(x, DEPTH)), true, "deep trees equality");
+		check(chain(x, DEPTH).hashCode(), chain(x, DEPTH).hashCode(), "deep trees hash code");
+		check(chain(x, DEPTH).equals(chain(value(0), DEPTH)), false, "deep trees inequality");
+
+		// Transformations
+		Term pure = x;
+		for (int i=0; i<DEPTH; i++) {pure = MyDepths.$succ.build(pure);}
+		check(pure.fold(env), value(DEPTH), "deep tree folding");
+		check(pure.fold(), pure, "deep tree partial folding");
+		check(chain(x, DEPTH).fold(env), chain(value(0), DEPTH), "deep impure tree folding");
+		Term copy = t.copy();
+		bottom.terms().set(0, value(2));
+		check(copy.evaluate(env), DEPTH + 1, "deep tree copy");
+		Interner interner = new Interner();
+		Term interned = interner.intern(chain(x, DEPTH));
+		check(interner.intern(chain(x, DEPTH)) == interned, true, "deep tree interning");
+		check(java.util.Arrays.toString(chain(x, DEPTH).evaluateBatch(scope.batch(2).set(x, new Object[] {1, 2}))),
+				"[" + (DEPTH + 1.) + ", " + (DEPTH + 2.) + "]", "deep tree batch evaluation");
+		Term twice = MyDepths.$add.build(chain(x, DEPTH), chain(x, DEPTH));
+		check(new Forest(scope, twice).evaluate(env)[0], 2 * DEPTH, "deep tree forest");
+
+		Encoding encoding = new Encoding();
+		int[] code = encoding.encode(chain(x, DEPTH));
+		check(encoding.evaluate(code, env), DEPTH, "deep tree encoding");
+		check(encoding.decode(code), chain(x, DEPTH), "deep tree decoding");
+		check(encoding.evaluate(encoding.encode(scales(55)), m2, null), scaled(55), "encoded bound expressions");
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Member descriptors tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc DescriptorTests.java
+ * @run main DescriptorTests
+ */
+
+import symprog.*;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+
+class MyDescribed {
+	@Symbolic private static int count;
+
+	@Symbolic private static Integer twice(Integer i) {return 2 * i;}
+	@Symbolic(suffix="2") private static Double twice(Double d) {return 2 * d;}
+}
+
+public class DescriptorTests extends AbstractTest {
+	public static void main(String[] args) {
+		new DescriptorTests().runTests();
+	}
+
+	private static Object descriptor(Term t) throws Exception {
+		Field f = Symbol.class.getDeclaredField("DESCRIPTOR");
+		f.setAccessible(true);
+		return f.get(t);
+	}
+
+	private void check(Term t1, Term t2, boolean shared, String what) throws Exception {
+		check(descriptor(t1) == descriptor(t2), shared, what);
+	}
+
+	@Override
+	protected void run() throws Exception {
+		String[] integer = new String[] {"java.lang.Integer"};
+
+		// Symbols of one member
+		check(new MethodSymbol("MyDescribed", "twice", integer), new MethodSymbol("MyDescribed", "twice", integer),
+				true, "symbols given by names");
+		check(MyDescribed.$twice, new MethodSymbol(MyDescribed.class, "twice", new Class<?>[] {Integer.class},
+				false, null, -1), true, "symbols given by constants");
+		check(MyDescribed.$count, new FieldSymbol(MyDescribed.class, "count", null, -1), true, "field symbols");
+		check(MyDescribed.$twice, MyDescribed.$twice.build(new Value(1)), true, "expression");
+		check(MyDescribed.$twice, MyDescribed.$twice.bind(null), true, "bound symbol");
+		check(MyDescribed.$twice, MyDescribed.$twice.quote(), true, "quoted symbol");
+
+		// Symbols of different members
+		check(MyDescribed.$twice, MyDescribed.$twice2, false, "overloads");
+		check(new MethodSymbol("MyDescribed", "twice", integer, true), new MethodSymbol("MyDescribed", "twice", integer),
+				false, "pure and impure variants");
+		check(new MethodSymbol("MyDescribed", "twice", integer, true).equals(new MethodSymbol("MyDescribed", "twice", integer)),
+				false, "equality of pure and impure variants");
+		check(new DoubleMethodSymbol("MyDescribed", "twice", new String[] {"java.lang.Double"}),
+				new MethodSymbol("MyDescribed", "twice", new String[] {"java.lang.Double"}), false, "primitive variant");
+
+		// Unreferenced descriptors are collected.
+		MethodSymbol gone = new MethodSymbol("MyDescribed", "gone", new String[0]);
+		WeakReference<Object> ref = new WeakReference<>(descriptor(gone));
+		gone = null;
+		for (int i=0; i<10 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		check(ref.get(), null, "unreferenced descriptor");
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/*
+ * @test
+ * @summary Compact encoding tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc EncodingTests.java
+ * @run main EncodingTests
+ */
+
+import symprog.*;
+
+class MyCodes {
+	private final Integer factor;
+
+	MyCodes(Integer factor) {this.factor = factor;}
+
+	@Symbolic static Integer size = 2;
+
+	@Symbolic private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic private static Integer neg(Integer i) {return -i;}
+	@Symbolic private static Integer terms(Term t) {return t.terms().size();}
+	@Symbolic private Integer scale(Integer i) {return factor * i;}
+	@Symbolic private Integer factor() {return factor;}
+	@Symbolic private static Boolean same(Object o1, Object o2) {return o1 == o2;}
+}
+
+public class EncodingTests extends AbstractTest {
+	public static void main(String[] args) {
+		new EncodingTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private static Term add(Term t1, Term t2) {return MyCodes.$add.build(t1, t2);}
+
+	private final Encoding encoding = new Encoding();
+	private final Environment.Scope scope = new Environment.Scope();
+	private final Environment.Variable x = scope.variable("x");
+	private final Environment env = scope.environment().set(x, 10);
+
+	// Encodes the tree, checking its decoding and evaluation.
+	private int[] check(Term t, Object instance, int nodes, String what) {
+		int[] code = encoding.encode(t);
+		check(code.length, nodes, what + " nodes");
+		check(encoding.decode(code), t, what + " decoding");
+		check(encoding.evaluate(code, instance, env), t.evaluate(instance, env), what + " evaluation");
+		return code;
+	}
+
+	@Override
+	protected void run() throws Exception {
+		check(value(1), null, 1, "value");
+		check(MyCodes.$size, null, 1, "symbol");
+		check(x, null, 1, "variable");
+		check(add(MyCodes.$neg.build(value(1)), add(MyCodes.$size, x)), null, 6, "tree");
+		check(MyCodes.$terms.build(add(x, value(1)).quote()), null, 2, "quoted argument");
+		check(add(x, value(1)).quote(), null, 1, "quoted tree");
+
+		// Unbound terms of bound expressions are evaluated with their instance.
+		MyCodes m2 = new MyCodes(2), m3 = new MyCodes(3);
+		Term scale = MyCodes.$scale.build(MyCodes.$factor);
+		check(scale, m2, 2, "instance expression");
+		check(add(scale, MyCodes.$scale.bind(m3).build(scale)), m2, 6, "bound expression");
+		Term decoded = encoding.decode(encoding.encode(MyCodes.$scale.bind(m3).build(value(1))));
+		check(decoded.evaluate(m2), 3, "decoded bound expression");
+
+		// Symbols and constants are shared by the encoded trees.
+		int size = encoding.size();
+		int[] code = encoding.encode(add(MyCodes.$neg.build(value(1)), add(MyCodes.$size, x)));
+		check(encoding.size(), size, "shared symbols");
+		Term t1 = encoding.decode(code), t2 = encoding.decode(code);
+		check(t1.terms().get(1).terms().get(0) == t2.terms().get(1).terms().get(0), true, "shared decoded symbol");
+		check(t1.terms().get(1) != t2.terms().get(1), true, "decoded expressions");
+		encoding.encode(add(value(2), MyCodes.$neg.build(value(2))));
+		check(encoding.size(), size + 1, "new constant");
+
+		// Equal mutable objects remain distinct.
+		Term same = MyCodes.$same.build(value(new java.util.ArrayList<>()), value(new java.util.ArrayList<>()));
+		check(same, null, 3, "equal mutable values");
+		check(encoding.evaluate(encoding.encode(same), env), false, "distinct mutable values");
+
+		try {
+			encoding.evaluate(encoding.encode(MyCodes.$neg.build(value("1"))), env);
+			check(false, true, "argument mismatch");
+		}
+		catch (SymbolicException e) {
+			check(e.getCause() instanceof IllegalArgumentException, true, "argument mismatch");
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Evaluation tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc EvaluationTests.java
+ * @run main EvaluationTests
+ */
+
+import symprog.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class MyCalculator {
+	@Symbolic static int count;
+	@Symbolic private int base = 10;
+
+	@Symbolic private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic private static long widen(long l) {return l;}
+	@Symbolic private static Object[] array(Object... values) {return values;}
+	@Symbolic private static void touch() {count++;}
+	@Symbolic private static Integer fail(Integer i) {throw new IllegalStateException();}
+	@Symbolic private int offset(int i) {return base + i;}
+	@Symbolic private static boolean quoted(Term t) {return t instanceof FieldSymbol;}
+	@Symbolic private static Integer unquoted(Term t) {return (Integer)t.evaluate();}
+
+	@Symbolic private static double scale(double d, double f) {return d * f;}
+	@Symbolic private static long sum(long i, long j) {return i + j;}
+	@Symbolic private static int twice(int i) {return 2 * i;}
+	@Symbolic private static double half(int i) {return i / 2.;}
+	@Symbolic private static Double negate(Double d) {return -d;}
+
+	static int ticks;
+	@Symbolic private static Integer tick() {return ++ticks;}
+
+	static String trace = "";
+	@Symbolic private static Integer trace(Integer i) {trace += i; return i;}
+}
+
+public class EvaluationTests extends AbstractTest {
+	public static void main(String[] args) {
+		new EvaluationTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	@Override
+	protected void run() throws Exception {
+		run(false);
+		run(true);
+	}
+
+	private boolean compiled;
+
+	private Term mode(Term t) {return compiled ? t.compile() : t;}
+
+	private Object evaluate(Term t, Object instance) {return mode(t).evaluate(instance);}
+
+	private void run(boolean compiled) throws Exception {
+		this.compiled = compiled;
+		MyCalculator c = new MyCalculator();
+		MyCalculator.count = 0;
+
+		check(evaluate(MyCalculator.$add.build(value(1), value(2)), null), 3, "static method");
+		check(evaluate(MyCalculator.$widen.build(value(3)), null), 3L, "widening conversion");
+		check(evaluate(MyCalculator.$array.build(value(new Object[] {1})), null).getClass(), Object[].class,
+				"variable arity method");
+		check(evaluate(MyCalculator.$touch.build(), null), null, "void method");
+		check(evaluate(MyCalculator.$count, null), 1, "static field");
+
+		check(evaluate(MyCalculator.$offset.build(value(1)), c), 11, "instance method");
+		check(evaluate(MyCalculator.$offset.bind(c).build(value(2)), null), 12, "bound method");
+		check(evaluate(MyCalculator.$base.bind(c), null), 10, "bound field");
+		check(evaluate(MyCalculator.$add.build(MyCalculator.$base.bind(c), MyCalculator.$count), null), 11,
+				"nested expression");
+
+		check(evaluate(MyCalculator.$quoted.build(MyCalculator.$base.quote()), null), true, "quoted argument");
+		check(evaluate(MyCalculator.$base.quote(), null) instanceof FieldSymbol, true, "quoted field");
+
+		// Shared subterm quoted in a tree evaluated by many threads.
+		Term shared = MyCalculator.$add.build(value(1), value(2));
+		Term tree = mode(MyCalculator.$add.build(
+				MyCalculator.$unquoted.build(shared.quote()),
+				MyCalculator.$add.build(shared, MyCalculator.$unquoted.build(shared.quote()))));
+		ExecutorService threads = Executors.newFixedThreadPool(4);
+		java.util.List<Future<Object>> results = new ArrayList<>();
+		for (int i=0; i<1000; i++) {
+			results.add(threads.submit(() -> tree.evaluate()));
+		}
+		threads.shutdown();
+		for (Future<Object> result: results) {
+			check(result.get(), 9, "concurrent evaluation");
+		}
+
+		// Variables, even below bound expressions.
+		Environment.Scope scope = new Environment.Scope();
+		Environment.Variable x = scope.variable("x"), y = scope.variable("y");
+		check(scope.variable("x"), x, "variable declaration");
+		Term polynomial = mode(MyCalculator.$add.build(x,
+				MyCalculator.$offset.bind(c).build(MyCalculator.$add.build(x, y))));
+		check(polynomial.evaluate(scope.environment().set(x, 1).set(y, 2)), 14, "variables");
+
+		java.util.List<Future<Object>> bindings = new ArrayList<>();
+		threads = Executors.newFixedThreadPool(4);
+		for (int i=0; i<1000; i++) {
+			Environment env = scope.environment().set(x, i).set(y, -i);
+			bindings.add(threads.submit(() -> polynomial.evaluate(env)));
+		}
+		threads.shutdown();
+		for (int i=0; i<1000; i++) {
+			check(bindings.get(i).get(), i + 10, "concurrent bindings");
+		}
+
+		// Batches, subtrees not depending on the columns being evaluated once.
+		Integer[] xs = new Integer[100];
+		for (int i=0; i<xs.length; i++) {xs[i] = i;}
+		double[] batch = polynomial.evaluateBatch(scope.batch(xs.length).set(x, xs).set(y, 5));
+		for (int i=0; i<xs.length; i++) {
+			check(batch[i], 2. * i + 15, "batch evaluation");
+		}
+		check(polynomial.evaluateBatch(scope.batch(2).set(x, 1).set(y, 2))[1], 14., "uniform batch");
+		check(polynomial.evaluateBatch(scope.batch(0)).length, 0, "empty batch");
+
+		MyCalculator.trace = "";
+		mode(MyCalculator.$add.build(x, MyCalculator.$trace.build(value(7))))
+				.evaluateBatch(scope.batch(xs.length).set(x, xs));
+		check(MyCalculator.trace, String.join("", Collections.nCopies(xs.length, "7")), "batch invocations");
+
+		// Impure methods are invoked once per row, even without column arguments.
+		Integer[] zeros = new Integer[] {0, 0, 0, 0};
+		MyCalculator.ticks = 0;
+		check(Arrays.toString(mode(MyCalculator.$add.build(MyCalculator.$tick.build(), x))
+				.evaluateBatch(scope.batch(zeros.length).set(x, zeros))), "[1.0, 2.0, 3.0, 4.0]", "impure batch");
+		MyCalculator.ticks = 0;
+		check(Arrays.toString(mode(MyCalculator.$add.build(MyCalculator.$tick, x))
+				.evaluateBatch(scope.batch(zeros.length).set(x, zeros))), "[1.0, 2.0, 3.0, 4.0]", "impure batch symbol");
+
+		try {
+			polynomial.evaluateBatch(scope.batch(xs.length).set(x, xs));
+			check(false, true, "unbound batch variable");
+		}
+		catch (SymbolicException e) {
+			check(e.getMessage(), "unbound variable y", "unbound batch variable");
+		}
+		try {
+			mode(MyCalculator.$array.build(x)).evaluateBatch(scope.batch(1).set(x, 1));
+			check(false, true, "batch of non-numbers");
+		}
+		catch (SymbolicException e) {}
+		try {
+			scope.batch(2).set(x, new double[3]);
+			check(false, true, "batch column size");
+		}
+		catch (SymbolicException e) {}
+
+		checkFailure(mode(MyCalculator.$add.build(x, y)), null);
+		try {
+			mode(x).evaluate(new Environment.Scope().environment());
+			check(false, true, "variable out of scope");
+		}
+		catch (SymbolicException e) {
+			check(e.getMessage(), "variable x out of scope", "variable out of scope");
+		}
+
+		// Primitive symbols, their values being passed unboxed in compiled trees.
+		check(MyCalculator.$scale instanceof DoubleMethodSymbol, true, "double symbol");
+		check(MyCalculator.$sum instanceof LongMethodSymbol, true, "long symbol");
+		check(MyCalculator.$twice instanceof IntMethodSymbol, true, "int symbol");
+		check(MyCalculator.$half.getClass(), MethodSymbol.class, "mixed primitive symbol");
+
+		Term scaled = mode(MyCalculator.$scale.build(MyCalculator.$scale.build(x, value(2)), value(3)));
+		check(scaled.evaluateAsDouble(scope.environment().set(x, 1.5)), 9., "double evaluation");
+		check(scaled.evaluate(scope.environment().set(x, 1.5)), 9., "boxed double evaluation");
+		check(scaled.evaluateAsDouble(scope.environment().set(x, 1)), 6., "widened double evaluation");
+		try {
+			scaled.evaluateAsLong(scope.environment().set(x, 1));
+			check(false, true, "narrowed double evaluation");
+		}
+		catch (SymbolicException e) {
+			check(e.getMessage(), "scale(scale(x,#),#) evaluates to 6.0, not a long", "narrowed double evaluation");
+		}
+		checkFailure(mode(MyCalculator.$scale.build(value("2"), value(1))), IllegalArgumentException.class);
+
+		// Primitive batches, columns of doubles being kept unboxed.
+		double[] ds = new double[] {1., 1.5, 2.};
+		check(Arrays.toString(scaled.evaluateBatch(scope.batch(ds.length).set(x, ds))), "[6.0, 9.0, 12.0]",
+				"double batch");
+		check(Arrays.toString(scaled.evaluateBatch(scope.batch(ds.length).set(x, new Object[] {1, 'a', 2L}))),
+				"[6.0, 582.0, 12.0]", "widened double batch");
+		check(Arrays.toString(mode(MyCalculator.$negate.build(MyCalculator.$scale.build(x, value(2))))
+				.evaluateBatch(scope.batch(ds.length).set(x, ds))), "[-2.0, -3.0, -4.0]", "boxed batch of doubles");
+		check(Arrays.toString(mode(x).evaluateBatch(scope.batch(ds.length).set(x, ds))), "[1.0, 1.5, 2.0]",
+				"batch of a double column");
+		try {
+			scaled.evaluateBatch(scope.batch(ds.length).set(x, new Object[] {1, "2", 3}));
+			check(false, true, "double batch mismatch");
+		}
+		catch (SymbolicException e) {}
+
+		Term summed = mode(MyCalculator.$sum.build(
+				MyCalculator.$twice.build(MyCalculator.$twice.build(value(3))), MyCalculator.$sum.build(value(4L), x)));
+		check(summed.evaluateAsLong(scope.environment().set(x, 5)), 21L, "long evaluation");
+		check(summed.evaluateAsDouble(scope.environment().set(x, 5)), 21., "widened long evaluation");
+		check(mode(MyCalculator.$twice.build(x)).evaluateAsInt(scope.environment().set(x, 'a')), 194, "int evaluation");
+		checkFailure(mode(MyCalculator.$twice.build(value(null))), IllegalArgumentException.class);
+		checkFailure(mode(MyCalculator.$twice.build(value(1L))), IllegalArgumentException.class);
+		checkFailure(mode(MyCalculator.$half.build(MyCalculator.$sum.build(value(1), value(2)))),
+				IllegalArgumentException.class);
+
+		MyCalculator.trace = "";
+		evaluate(MyCalculator.$add.build(
+				MyCalculator.$trace.build(value(1)),
+				MyCalculator.$trace.build(MyCalculator.$add.build(
+						MyCalculator.$trace.build(value(2)), MyCalculator.$trace.build(value(3))))), null);
+		check(MyCalculator.trace, "1235", "evaluation order");
+
+		checkFailure(mode(MyCalculator.$add.build(value(1), value("2"))), IllegalArgumentException.class);
+		checkFailure(mode(MyCalculator.$add.build(value(1))), IllegalArgumentException.class);
+		checkFailure(mode(MyCalculator.$widen.build(value(null))), IllegalArgumentException.class);
+		checkFailure(mode(MyCalculator.$offset.build(value(1))), NullPointerException.class);
+		checkFailure(mode(MyCalculator.$fail.build(value(1))), IllegalStateException.class);
+		checkFailure(mode(MyCalculator.$fail.build(value(null))), IllegalStateException.class);
+
+		try {
+			evaluate(MyCalculator.$add.build(value(1), value("2")), null);
+		}
+		catch (SymbolicException e) {
+			check(e.getMessage(), "expected -> private static java.lang.Integer MyCalculator.add(" +
+					"java.lang.Integer,java.lang.Integer), actual -> 1, 2", "argument mismatch diagnostic");
+		}
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/*
+ * @test
+ * @summary Constant folding and partial evaluation tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc FoldingTests.java
+ * @run main FoldingTests
+ */
+
+import symprog.*;
+
+class MyConstants {
+	static int calls;
+
+	@Symbolic static final Integer SIZE = 3;
+	@Symbolic static Integer count = 0;
+
+	private final Integer offset;
+
+	MyConstants(Integer offset) {this.offset = offset;}
+
+	@Symbolic(pure=true) private static Integer add(Integer i, Integer j) {calls++; return i + j;}
+	@Symbolic(pure=true) private static Integer div(Integer i, Integer j) {calls++; return i / j;}
+	@Symbolic(pure=true) private static Integer one() {calls++; return 1;}
+	@Symbolic(pure=true) private static Integer size(Term t) {calls++; return t.terms().size();}
+	@Symbolic(pure=true) private Integer offset() {calls++; return offset;}
+	@Symbolic private static Integer next() {calls++; return count++;}
+}
+
+public class FoldingTests extends AbstractTest {
+	public static void main(String[] args) {
+		new FoldingTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private static Term add(Term t1, Term t2) {return MyConstants.$add.build(t1, t2);}
+
+	private final Environment.Scope scope = new Environment.Scope();
+	private final Environment.Variable x = scope.variable("x"), y = scope.variable("y");
+	private final Environment env = scope.environment().set(x, 10).set(y, 20);
+
+	// Folds the tree in the given environment, checking that its evaluation isn't changed.
+	private Term fold(Term t, Environment partial, Term expected, String what) {
+		Object evaluation = t.evaluate(env);
+		MyConstants.calls = 0;
+		Term folded = t.fold(partial);
+		check(folded, expected, what);
+		check(folded.evaluate(env), evaluation, what + " evaluation");
+		return folded;
+	}
+
+	@Override
+	protected void run() throws Exception {
+		Term t = add(MyConstants.$one.build(), add(MyConstants.$SIZE, value(2)));
+		fold(t, null, value(6), "constant tree");
+		check(MyConstants.calls, 3, "constant tree calls");
+		check(t.terms().get(0), MyConstants.$one.build(), "unchanged original tree");
+
+		check(MyConstants.$one.fold(), value(1), "constant symbol");
+		check(MyConstants.$SIZE.fold(), value(3), "static final field");
+		check(MyConstants.$count.fold(), MyConstants.$count, "mutable field");
+		check(MyConstants.$offset.bind(new MyConstants(4)).fold(), value(4), "bound constant symbol");
+		check(MyConstants.$offset.fold(), MyConstants.$offset, "unbound constant symbol");
+		check(MyConstants.$offset.fold(new MyConstants(5), null), value(5), "constant symbol of an instance");
+
+		// Partial evaluation
+		Term u = add(x, add(y, add(value(1), value(2))));
+		Term partial = fold(u, null, add(x, add(y, value(3))), "free variables");
+		check(partial.terms().get(0), x, "shared variable");
+		fold(u, scope.environment().set(y, 20), add(x, value(23)), "partial evaluation");
+		fold(u, env, value(33), "bound variables");
+
+		// Kept subtrees
+		Term impure = add(MyConstants.$next.build(), value(1));
+		check(impure.fold() == impure, true, "impure expression");
+		Term failing = add(value(1), MyConstants.$div.build(value(1), value(0)));
+		check(failing.fold(), failing, "failing expression");
+		checkFailure(failing.fold(), ArithmeticException.class);
+		Term quoted = add(x, value(1)).quote();
+		check(quoted.fold() == quoted, true, "quoted expression");
+		check(MyConstants.$size.build(quoted).fold(), value(2), "quoted argument");
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/*
+ * @test
+ * @summary Incremental evaluation tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc IncrementalTests.java
+ * @run main/othervm -Dsymprog.incremental=true -Dsymprog.compileThreshold=10 IncrementalTests
+ */
+
+import symprog.*;
+
+class MyIncrements {
+	static int calls; // Only counts the actual invocations.
+
+	private final int factor;
+	@Symbolic int x;
+	@Symbolic final int y = 1;
+
+	MyIncrements(int factor) {this.factor = factor;}
+
+	@Symbolic(pure=true) private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic(pure=true) private static Integer square(Integer i) {calls++; return i * i;}
+	@Symbolic(pure=true) private Integer scale(Integer i) {calls++; return factor * i;}
+	@Symbolic private static Integer impure(Integer i) {calls++; return i;}
+}
+
+public class IncrementalTests extends AbstractTest {
+	public static void main(String[] args) {
+		new IncrementalTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private static Term add(Term t1, Term t2) {return MyIncrements.$add.build(t1, t2);}
+	private static Term square(Term t) {return MyIncrements.$square.build(t);}
+
+	private void check(Term t, Object instance, Environment env, Object expected, int calls, String what) {
+		MyIncrements.calls = 0;
+		check(t.evaluate(instance, env), expected, what);
+		check(MyIncrements.calls, calls, what + " calls");
+	}
+
+	@Override
+	protected void run() throws Exception {
+		Environment.Scope scope = new Environment.Scope();
+		Environment.Variable x = scope.variable("x");
+		Environment env = scope.environment().set(x, 1);
+
+		Term t = add(square(x), add(square(value(2)), square(value(3))));
+		check(t, null, env, 14, 3, "first evaluation");
+		check(t, null, env, 14, 0, "reevaluation");
+
+		// Only the path from the mutated term to the root is evaluated again.
+		t.terms().get(1).terms().get(0).terms().set(0, value(4));
+		check(t, null, env, 26, 1, "mutated leaf");
+		check(t, null, env, 26, 0, "reevaluation of the mutated tree");
+		t.terms().get(1).terms().set(1, square(value(5)));
+		check(t, null, env, 42, 1, "mutated subtree");
+		Term shared = square(value(6));
+		Term u = add(shared, shared);
+		check(u, null, env, 72, 1, "shared subtree");
+		u.terms().set(1, value(0));
+		check(u, null, env, 36, 0, "other shared subtree");
+
+		// Other bindings
+		env.set(x, 2);
+		check(t, null, env, 45, 3, "modified environment");
+		check(t, null, scope.environment().set(x, 2), 45, 3, "other environment");
+
+		MyIncrements m2 = new MyIncrements(2), m3 = new MyIncrements(3);
+		Term scale = MyIncrements.$scale.build(value(1));
+		check(scale, m2, null, 2, 1, "instance method");
+		check(scale, m2, null, 2, 0, "reevaluated instance method");
+		check(scale, m3, null, 3, 1, "other instance");
+
+		// Side effects
+		Term impure = add(MyIncrements.$impure.build(value(1)), square(value(2)));
+		check(impure, null, null, 5, 2, "impure expression");
+		check(impure, null, null, 5, 1, "reevaluated impure expression");
+
+		// Fields that aren't final are read again.
+		MyIncrements p = new MyIncrements(1);
+		Term field = add(MyIncrements.$x.bind(p), value(1));
+		for (int i=0; i<4; i++) {
+			p.x = i;
+			check(field, null, null, i + 1, 0, "mutable field (evaluation " + i + ")");
+		}
+		Term constant = add(MyIncrements.$y.bind(p), square(value(2)));
+		check(constant, null, null, 5, 1, "final field");
+		check(constant, null, null, 5, 0, "reevaluated final field");
+
+		// Incremental expressions aren't compiled.
+		check(t, null, env, 45, 3, "former environment");
+		for (int i=0; i<20; i++) {
+			check(t, null, env, 45, 0, "compiled tree (evaluation " + i + ")");
+		}
+	}
+}
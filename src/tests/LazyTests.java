@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Lazy symbols tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc LazyTests.java
+ * @run main LazyTests
+ */
+
+import symprog.*;
+
+class MyLazies {
+	@Symbolic(lazy=true) private static int count = 2;
+	@Symbolic(lazy=true) private final String name;
+	@Symbolic private static int eager;
+
+	MyLazies(String name) {this.name = name;}
+
+	@Symbolic(lazy=true, pure=true) private static double twice(double d) {return 2 * d;}
+	@Symbolic(lazy=true, flags=java.lang.reflect.Modifier.PUBLIC) private String greet(String s) {return s + " " + name;}
+
+	interface MyLazy {@Symbolic(lazy=true) Integer size();}
+}
+
+public class LazyTests extends AbstractTest {
+	public static void main(String[] args) {
+		new LazyTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private static boolean field(Class<?> c, String name) {
+		try {
+			c.getDeclaredField(name);
+			return true;
+		}
+		catch (NoSuchFieldException e) {return false;}
+	}
+
+	@Override
+	protected void run() throws Exception {
+		check(field(MyLazies.class, "$twice"), false, "symbol not held by its class");
+		check(field(Class.forName("MyLazies$$Symbols"), "$twice"), true, "symbol held by the holder");
+		check(field(MyLazies.class, "$eager"), true, "eager symbol");
+		check(MyLazies.$twice() == MyLazies.$twice(), true, "single symbol");
+		check(MyLazies.$twice(), new DoubleMethodSymbol("MyLazies", "twice", new String[] {"double"}, true), "lazy symbol");
+
+		MyLazies l = new MyLazies("world");
+		check(MyLazies.$twice().build(value(2.)).evaluateAsDouble(null), 4., "lazy method symbol");
+		check(MyLazies.$count().evaluate(), 2, "lazy static field symbol");
+		check(MyLazies.$name().evaluate(l), "world", "lazy field symbol");
+		check(MyLazies.$greet().build(value("hello")).evaluate(l), "hello world", "lazy symbol with flags");
+		check(MyLazies.MyLazy.$size().build().evaluate((MyLazies.MyLazy)() -> 3), 3, "lazy interface symbol");
+	}
+}
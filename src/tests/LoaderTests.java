@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Class loaders tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc LoaderTests.java
+ * @run main LoaderTests
+ */
+
+import symprog.*;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+class MyLoaded {
+	@Symbolic private static int counter;
+
+	@Symbolic private static int get() {return counter;}
+
+	// Evaluations of the symbols once the counter is set, along with them.
+	static Object[] count(int n) {
+		counter = n;
+		return new Object[] {$counter.evaluate(), $get.build().evaluate(), $counter, Symbols.field(MyLoaded.class, "counter")};
+	}
+}
+
+// Loads its own MyLoaded class, the other ones being loaded by its parent.
+class MyLoader extends URLClassLoader {
+	MyLoader(URL classes) {super(new URL[] {classes}, MyLoader.class.getClassLoader());}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		if (!name.startsWith("MyLoaded")) {return super.loadClass(name, resolve);}
+
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> c = findLoadedClass(name);
+			return c != null ? c : findClass(name);
+		}
+	}
+}
+
+public class LoaderTests extends AbstractTest {
+	public static void main(String[] args) {
+		new LoaderTests().runTests();
+	}
+
+	// Classes of other loaders are in other runtime packages.
+	private static Object[] count(ClassLoader loader, int n) throws Exception {
+		Method count = Class.forName("MyLoaded", true, loader).getDeclaredMethod("count", int.class);
+		count.setAccessible(true);
+		return (Object[])count.invoke(null, n);
+	}
+
+	@Override
+	protected void run() throws Exception {
+		URL classes = MyLoaded.class.getProtectionDomain().getCodeSource().getLocation();
+		ClassLoader l1 = new MyLoader(classes), l2 = new MyLoader(classes);
+		check(Class.forName("MyLoaded", false, l1) != Class.forName("MyLoaded", false, l2), true, "distinct classes");
+
+		Object[] r1 = count(l1, 1), r2 = count(l2, 2);
+		check(r1[0], 1, "field of the first loader");
+		check(r1[1], 1, "method of the first loader");
+		check(r2[0], 2, "field of the second loader");
+		check(r2[1], 2, "method of the second loader");
+		check(r1[2].equals(r2[2]), false, "symbols of different loaders");
+		check(r2[3], r2[2], "indexed symbol of the second loader");
+		check(MyLoaded.count(3)[0], 3, "field of the application loader");
+
+		// The first loader is only kept reachable by its own classes.
+		WeakReference<ClassLoader> ref = new WeakReference<>(l1);
+		l1 = null;
+		r1 = null;
+		for (int i=0; i<10 && ref.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		check(ref.get(), null, "collected loader");
+		check(((Symbol<?>)r2[2]).evaluate(), 2, "symbol of the remaining loader");
+	}
+}
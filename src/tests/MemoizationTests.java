@@ -0,0 +1,103 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Memoization tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc MemoizationTests.java
+ * @run main/othervm -Dsymprog.cacheSize=4 -Dsymprog.compileThreshold=10 MemoizationTests
+ */
+
+import symprog.*;
+
+class MyMemo {
+	static int calls; // Only counts the actual invocations.
+
+	private final int factor;
+
+	MyMemo(int factor) {this.factor = factor;}
+
+	@Symbolic(pure=true) private static Integer square(Integer i) {calls++; return i * i;}
+	@Symbolic(pure=true) private static Integer none(Integer i) {calls++; return null;}
+	@Symbolic(pure=true) private static Integer fail(Integer i) {calls++; throw new IllegalStateException();}
+	@Symbolic(pure=true) private static Integer one() {calls++; return 1;}
+	@Symbolic(pure=true) private Integer scale(Integer i) {calls++; return factor * i;}
+	@Symbolic(pure=true) private static double half(double d) {calls++; return d / 2.;}
+	@Symbolic private static Integer impure(Integer i) {calls++; return i;}
+}
+
+public class MemoizationTests extends AbstractTest {
+	public static void main(String[] args) {
+		new MemoizationTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private void check(Term t, Object instance, Object expected, int calls, String what) {
+		MyMemo.calls = 0;
+		check(t.evaluate(instance), expected, what);
+		check(MyMemo.calls, calls, what + " calls");
+	}
+
+	@Override
+	protected void run() throws Exception {
+		check(MyMemo.$square.pure(), true, "pure symbol");
+		check(MyMemo.$half.pure() && MyMemo.$half instanceof DoubleMethodSymbol, true, "pure double symbol");
+		check(MyMemo.$impure.pure(), false, "impure symbol");
+
+		check(MyMemo.$square.build(value(3)), null, 9, 1, "first evaluation");
+		check(MyMemo.$square.build(value(3)), null, 9, 0, "memoized evaluation");
+		check(MyMemo.$square.bind(null).build(value(3)), null, 9, 0, "memoized bound evaluation");
+		check(MyMemo.$square.build(MyMemo.$square.build(value(3))), null, 81, 1, "memoized argument");
+		check(MyMemo.$one.build(), null, 1, 1, "constant");
+		check(MyMemo.$one.build(), null, 1, 0, "memoized constant");
+		check(MyMemo.$none.build(value(1)), null, null, 1, "null result");
+		check(MyMemo.$none.build(value(1)), null, null, 0, "memoized null result");
+		check(MyMemo.$half.build(value(3.)), null, 1.5, 1, "double result");
+		check(MyMemo.$half.build(value(3.)), null, 1.5, 0, "memoized double result");
+
+		// Least recently used results evicted first.
+		for (int i=10; i<14; i++) {
+			check(MyMemo.$square.build(value(i)), null, i * i, 1, "filling");
+		}
+		check(MyMemo.$square.build(value(10)), null, 100, 0, "recently used");
+		check(MyMemo.$square.build(value(14)), null, 196, 1, "eviction");
+		check(MyMemo.$square.build(value(10)), null, 100, 0, "kept result");
+		check(MyMemo.$square.build(value(11)), null, 121, 1, "evicted result");
+
+		// Not memoized
+		MyMemo.calls = 0;
+		checkFailure(MyMemo.$fail.build(value(1)), IllegalStateException.class);
+		checkFailure(MyMemo.$fail.build(value(1)), IllegalStateException.class);
+		check(MyMemo.calls, 2, "failures");
+		check(MyMemo.$impure.build(value(1)), null, 1, 1, "impure evaluation");
+		check(MyMemo.$impure.build(value(1)), null, 1, 1, "impure reevaluation");
+
+		MyMemo m2 = new MyMemo(2), m3 = new MyMemo(3);
+		check(MyMemo.$scale.build(value(1)), m2, 2, 1, "instance method");
+		check(MyMemo.$scale.build(value(1)), m3, 3, 1, "other instance");
+		check(MyMemo.$scale.build(value(1)), m2, 2, 0, "memoized instance method");
+
+		// Memoized expressions aren't compiled, even within compiled trees.
+		Term t = MyMemo.$impure.build(MyMemo.$square.build(value(5)));
+		check(t, null, 25, 2, "compiled tree");
+		for (int i=0; i<20; i++) {
+			check(t, null, 25, 1, "compiled tree (evaluation " + i + ")");
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Parallel evaluation tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc ParallelTests.java
+ * @run main/othervm -Dsymprog.parallelThreshold=1 -Dsymprog.compileThreshold=10 ParallelTests
+ */
+
+import symprog.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+class MyWork {
+	static CyclicBarrier barrier;
+	static final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+	// Only returns if as many threads as the barrier's parties meet.
+	private static Integer meet(Integer i) throws Exception {
+		threads.add(Thread.currentThread());
+		barrier.await(10, TimeUnit.SECONDS);
+		return i;
+	}
+	private static Integer add(Integer i, Integer j) {return i + j;}
+	private static Integer fail(Integer i) {throw new IllegalStateException(String.valueOf(i));}
+
+	static final MethodSymbol $meet = new MethodSymbol("MyWork", "meet", new String[] {"java.lang.Integer"}, true);
+	static final MethodSymbol $add = new MethodSymbol("MyWork", "add",
+			new String[] {"java.lang.Integer", "java.lang.Integer"}, true);
+	static final MethodSymbol $fail = new MethodSymbol("MyWork", "fail", new String[] {"java.lang.Integer"}, true);
+
+	@Symbolic private static Integer impure(Integer i, Integer j) {return i + j;}
+}
+
+public class ParallelTests extends AbstractTest {
+	public static void main(String[] args) {
+		new ParallelTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private static Term meet(int i) {return MyWork.$meet.build(value(i));}
+
+	// Threads that evaluated the tree, the given number of them having to meet.
+	private Set<Thread> threads(Term t, int parties, Object expected, String what) {
+		MyWork.barrier = new CyclicBarrier(parties);
+		MyWork.threads.clear();
+		check(t.evaluate(), expected, what);
+		return new HashSet<>(MyWork.threads);
+	}
+
+	@Override
+	protected void run() throws Exception {
+		check(MyWork.$add.pure(), true, "pure symbol");
+		check(MyWork.$impure.pure(), false, "impure symbol");
+
+		Term sum = MyWork.$add.build(meet(1), meet(2));
+		check(threads(sum, 2, 3, "parallel evaluation").size(), 2, "parallel threads");
+
+		// Side effects keep the evaluation sequential.
+		Set<Thread> main = Collections.singleton(Thread.currentThread());
+		check(threads(MyWork.$impure.build(meet(1), meet(2)), 1, 3, "impure expression"), main,
+				"impure expression threads");
+		check(threads(MyWork.$add.build(meet(1), MyWork.$impure.build(meet(2), value(3))), 1, 6,
+				"impure argument"), main, "impure argument threads");
+
+		// Parallel expressions aren't compiled, even within compiled trees.
+		Term outer = MyWork.$impure.build(sum, value(0));
+		for (int i=0; i<20; i++) {
+			check(threads(outer, 2, 3, "compiled tree (evaluation " + i + ")").size(), 2,
+					"compiled tree threads (evaluation " + i + ")");
+		}
+
+		// Failure of the first argument, as sequentially.
+		MyWork.barrier = new CyclicBarrier(1);
+		try {
+			MyWork.$add.build(MyWork.$fail.build(meet(1)), MyWork.$fail.build(meet(2))).evaluate();
+			check(false, true, "parallel failure");
+		}
+		catch (SymbolicException e) {
+			check(e.getCause().getCause().getMessage(), "1", "parallel failure");
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+/*
+ * @test
+ * @summary Common subtrees evaluation tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc SharingTests.java
+ * @run main SharingTests
+ */
+
+import symprog.*;
+import java.util.Arrays;
+
+class MyShared {
+	static int calls;
+
+	private final Integer factor;
+
+	MyShared(Integer factor) {this.factor = factor;}
+
+	@Symbolic(pure=true) private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic(pure=true) private static Integer square(Integer i) {calls++; return i * i;}
+	@Symbolic(pure=true) private Integer scale(Integer i) {calls++; return factor * i;}
+	@Symbolic(pure=true) private Integer id(Integer i) {return i;}
+	@Symbolic private static Integer impure(Integer i) {calls++; return i;}
+}
+
+public class SharingTests extends AbstractTest {
+	public static void main(String[] args) {
+		new SharingTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private static Term add(Term t1, Term t2) {return MyShared.$add.build(t1, t2);}
+	private static Term square(Term t) {return MyShared.$square.build(t);}
+
+	private final Environment.Scope scope = new Environment.Scope();
+	private final Environment.Variable x = scope.variable("x");
+
+	// Evaluates the forest, checking the shared subtrees and the evaluations of the trees.
+	private void check(Object instance, int shared, int calls, String what, Term... trees) {
+		Forest forest = new Forest(scope, trees);
+		check(forest.shared(), shared, what + " shared subtrees");
+
+		Object[] expected = new Object[trees.length];
+		for (int i=0; i<trees.length; i++) {
+			expected[i] = trees[i].evaluate(instance, scope.environment().set(x, 3));
+		}
+		MyShared.calls = 0;
+		check(Arrays.asList(forest.evaluate(instance, scope.environment().set(x, 3))), Arrays.asList(expected), what);
+		check(MyShared.calls, calls, what + " calls");
+	}
+
+	@Override
+	protected void run() throws Exception {
+		check(null, 1, 1, "repeated subtree", add(square(x), square(x)));
+		check(null, 1, 1, "subtree of several trees", square(x), add(square(x), value(1)));
+		check(null, 1, 1, "repeated tree", add(square(x), value(1)), add(square(x), value(1)));
+		check(null, 2, 2, "nested subtrees",
+				add(square(square(x)), square(square(x))), square(x));
+		check(null, 0, 2, "distinct subtrees", square(x), square(value(3)));
+		check(null, 0, 2, "impure subtree", add(MyShared.$impure.build(x), MyShared.$impure.build(x)));
+		Term quoted = square(x).quote();
+		check(null, 0, 0, "quoted subtree", quoted, quoted);
+
+		// Subtrees evaluated with the instance of a bound expression aren't shared with others.
+		MyShared m2 = new MyShared(2), m3 = new MyShared(3);
+		Term scale = MyShared.$scale.build(x);
+		check(m2, 1, 1, "instance subtree", scale, add(scale, value(1)));
+		check(m2, 0, 2, "instance subtree of a bound expression", scale, MyShared.$id.bind(m3).build(scale));
+		check(m2, 1, 1, "bound subtree", MyShared.$id.build(MyShared.$scale.bind(m3).build(x)),
+				MyShared.$scale.bind(m3).build(x));
+
+		// The variables of the shared subtrees are private to each forest.
+		int size = scope.size();
+		Forest f1 = new Forest(scope, add(square(x), square(x)));
+		check(scope.size(), size, "scope size");
+
+		Environment.Variable y = scope.variable("#0");
+		Forest f2 = new Forest(scope, add(square(y), square(y)), y);
+		Environment env = scope.environment().set(x, 3).set(y, 2);
+		check(Arrays.asList(f2.evaluate(env)), Arrays.asList(8, 2), "variable named as a shared subtree");
+		check(Arrays.asList(f1.evaluate(env)), Arrays.asList(18), "other forest over the same scope");
+		check(Arrays.asList(f2.evaluate(env)), Arrays.asList(8, 2), "forest evaluated again");
+		check(env.get(y), 2, "environment left unchanged");
+
+		// Batches
+		Term t1 = add(square(x), value(1)), t2 = add(square(x), square(value(2)));
+		Forest forest = new Forest(scope, t1, t2);
+		MyShared.calls = 0;
+		double[][] results = forest.evaluateBatch(scope.batch(3).set(x, new Object[] {1, 2, 3}));
+		check(MyShared.calls, 4, "batch calls");
+		check(Arrays.toString(results[0]), "[2.0, 5.0, 10.0]", "batch evaluation");
+		check(Arrays.toString(results[1]), "[5.0, 8.0, 13.0]", "batch evaluation of the second tree");
+		results = forest.evaluateBatch(scope.batch(3).set(x, 1));
+		check(Arrays.toString(results[1]), "[5.0, 5.0, 5.0]", "batch of a single value");
+		results = new Forest(scope, add(square(y), value(0)), add(square(y), x)).evaluateBatch(
+				scope.batch(3).set(x, new Object[] {1, 2, 3}).set(y, 2));
+		check(Arrays.toString(results[1]), "[5.0, 6.0, 7.0]", "batch of a variable named as a shared subtree");
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Structural equality and interning tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc StructureTests.java
+ * @run main StructureTests
+ */
+
+import symprog.*;
+
+class MyShapes {
+	@Symbolic static int size;
+
+	@Symbolic private static Integer add(Integer i, Integer j) {return i + j;}
+	@Symbolic private static Integer neg(Integer i) {return -i;}
+}
+
+public class StructureTests extends AbstractTest {
+	public static void main(String[] args) {
+		new StructureTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private void checkEqual(Term t1, Term t2, boolean equal, String what) {
+		check(t1.equals(t2), equal, what);
+		check(t2.equals(t1), equal, what + " (symmetry)");
+		if (equal) {check(t1.hashCode(), t2.hashCode(), what + " hash code");}
+	}
+
+	private Term tree(int i) {
+		return MyShapes.$add.build(MyShapes.$neg.build(value(i)), MyShapes.$add.build(value(1), MyShapes.$size));
+	}
+
+	@Override
+	protected void run() throws Exception {
+		checkEqual(value(1.), value(1.), true, "values");
+		checkEqual(value(1), value(1L), false, "values of different types");
+		checkEqual(value(new int[] {1}), value(new int[] {1}), true, "array values");
+		checkEqual(value(1).quote(), value(1), false, "quoted value");
+
+		checkEqual(MyShapes.$size, new FieldSymbol("MyShapes", "size"), true, "field symbols");
+		checkEqual(MyShapes.$add, MyShapes.$neg, false, "method symbols");
+		checkEqual(MyShapes.$add.bind(this), MyShapes.$add.bind(this), true, "bound symbols");
+		checkEqual(MyShapes.$add.bind(this), MyShapes.$add.bind(null), false, "symbols bound to other instances");
+		checkEqual(MyShapes.$add.bind(this), MyShapes.$add, false, "bound and unbound symbols");
+
+		checkEqual(tree(1), tree(1), true, "expressions");
+		checkEqual(tree(1), tree(2), false, "expressions with other values");
+		checkEqual(tree(1).quote(), tree(1), false, "quoted expression");
+		checkEqual(tree(1).quote(), tree(1).quote(), true, "quoted expressions");
+		checkEqual(((MethodSymbol.ExpressionSymbol)tree(1)).bind(this), tree(1), false, "bound expression");
+
+		// Hash codes follow the mutations.
+		Term t = tree(1), u = tree(2);
+		int hash = t.hashCode();
+		t.terms().get(0).terms().set(0, value(2));
+		checkEqual(t, u, true, "mutated expression");
+		t.terms().get(0).terms().set(0, value(1));
+		check(t.hashCode(), hash, "restored hash code");
+
+		// Copies aren't affected by the mutations.
+		Term c = t.copy();
+		checkEqual(c, t, true, "copy");
+		t.terms().get(0).terms().set(0, value(2));
+		checkEqual(c, tree(1), true, "copy of a mutated expression");
+		checkEqual(tree(1).quote().copy(), tree(1).quote(), true, "copy of a quoted expression");
+
+		// Persistent edits
+		Term p = tree(1), p2 = p.with(value(2), 0, 0);
+		checkEqual(p2, tree(2), true, "edited tree");
+		checkEqual(p, tree(1), true, "unchanged original tree");
+		check(p2.terms().get(1) == p.terms().get(1), true, "shared subtree");
+		check(p2.at(0, 0), value(2), "edited term");
+		check(p.with(value(3)), value(3), "edited root");
+		check(tree(1).quote().with(value(2), 0, 0), tree(2).quote(), "edited quoted tree");
+		try {
+			p.with(value(2), 0, 0, 0);
+			check(false, true, "edit of a missing term");
+		}
+		catch (SymbolicException e) {
+			check(e.getMessage().startsWith("no term 0"), true, "edit of a missing term");
+		}
+
+		// Hash-consing
+		Interner interner = new Interner();
+		Term t1 = tree(1), t2 = tree(1), t3 = tree(3);
+		Term i1 = interner.intern(t1), i2 = interner.intern(t2), i3 = interner.intern(t3);
+		check(i1.equals(t1) && interner.intern(i1) == i1, true, "interned tree");
+		check(i1.terms().get(0).terms().get(0) == i1.terms().get(1).terms().get(0), true, "shared value");
+		Term single = MyShapes.$neg.build(value(5));
+		check(interner.intern(single) == single, true, "tree interned as is");
+		check(i2 == i1, true, "equal interned tree");
+		check(i3 != t3 && i3.equals(t3), true, "rebuilt tree");
+		check(i3.terms().get(1) == i1.terms().get(1), true, "shared subtree");
+		check(t3.terms().get(1) != i1.terms().get(1), true, "unchanged original tree");
+		check(i3.evaluate(), t3.evaluate(), "rebuilt tree evaluation");
+		check(interner.intern(tree(1).quote()) != i1, true, "quoted tree");
+	}
+}
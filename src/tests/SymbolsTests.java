@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Symbols' index tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc SymbolsTests.java
+ * @run main SymbolsTests
+ */
+
+import symprog.*;
+
+class MyIndexed {
+	@Symbolic static int size = 3;
+	@Symbolic private final String name;
+
+	MyIndexed(String name) {this.name = name;}
+
+	@Symbolic(suffix="M") static int size() {return 4;}
+	@Symbolic(pure=true) static double half(double d) {return d / 2;}
+	@Symbolic static String join(String s, int i) {return s + i;}
+	@Symbolic(suffix="2") static String join(String s, String t) {return s + t;}
+	@Symbolic(lazy=true) private static String[] split(String s) {return s.split(",");}
+	@Symbolic(origin="java.lang.Object", suffix="_") public String toString() {return name;}
+
+	// Keys of the same hash code
+	@Symbolic static int Aa = 5, BB = 6;
+	@Symbolic static int AaAa() {return 7;}
+	@Symbolic static int BBBB() {return 8;}
+	@Symbolic static int AaBB() {return 9;}
+
+	static class MyNested {@Symbolic static int one() {return 1;}}
+}
+
+public class SymbolsTests extends AbstractTest {
+	public static void main(String[] args) {
+		new SymbolsTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	@Override
+	protected void run() throws Exception {
+		check(Symbols.field(MyIndexed.class, "size"), MyIndexed.$size, "field");
+		check(Symbols.method(MyIndexed.class, "size"), MyIndexed.$sizeM, "method of the same name");
+		check(Symbols.lookup(MyIndexed.class, "size"), MyIndexed.$sizeM, "method preferred to field");
+		check(Symbols.lookup(MyIndexed.class, "name"), MyIndexed.$name, "private field");
+		check(Symbols.lookup(MyIndexed.class, "join", String.class, int.class), MyIndexed.$join, "overloaded method");
+		check(Symbols.lookup(MyIndexed.class, "join", String.class, String.class), MyIndexed.$join2, "other overloaded method");
+		check(Symbols.lookup(MyIndexed.class, "split", String.class), MyIndexed.$split(), "lazy symbol");
+		check(Symbols.lookup(MyIndexed.MyNested.class, "one"), MyIndexed.MyNested.$one, "nested class");
+		check(Symbols.lookup(MyIndexed.class, "size") == Symbols.lookup(MyIndexed.class, "size"), true, "single symbol");
+		check(Symbols.field(MyIndexed.class, "Aa"), MyIndexed.$Aa, "colliding field");
+		check(Symbols.field(MyIndexed.class, "BB"), MyIndexed.$BB, "other colliding field");
+		check(Symbols.method(MyIndexed.class, "AaAa"), MyIndexed.$AaAa, "colliding method");
+		check(Symbols.method(MyIndexed.class, "BBBB"), MyIndexed.$BBBB, "other colliding method");
+		check(Symbols.method(MyIndexed.class, "AaBB"), MyIndexed.$AaBB, "third colliding method");
+
+		Symbol<?> half = Symbols.lookup(MyIndexed.class, "half", double.class);
+		check(half instanceof DoubleMethodSymbol && ((MethodSymbol)half).pure(), true, "specialized pure symbol");
+		check(((MethodSymbol)half).build(value(3.)).evaluate(), 1.5, "evaluation");
+		check(Symbols.field(MyIndexed.class, "size").evaluate(), 3, "field evaluation");
+
+		check(Symbols.lookup(MyIndexed.class, "join", String.class), null, "unknown signature");
+		check(Symbols.lookup(MyIndexed.class, "half"), null, "unknown method");
+		check(Symbols.field(MyIndexed.class, "half"), null, "unknown field");
+		check(Symbols.lookup(MyIndexed.class, "toString"), null, "member of an origin");
+		check(Symbols.lookup(SymbolsTests.class, "run"), null, "class without index");
+	}
+}
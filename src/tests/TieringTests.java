@@ -0,0 +1,100 @@
+/*
+ * Copyright 2017 Bernard Blaser
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * @test
+ * @summary Tiered evaluation tests
+ * @author Bernard Blaser
+ *
+ * @compile -processor symprog.SymProc TieringTests.java
+ * @run main/othervm -Dsymprog.compileThreshold=2 TieringTests
+ */
+
+import symprog.*;
+
+class MyTiers {
+	static int calls;
+
+	@Symbolic private static Integer add(Integer i, Integer j) {calls++; return i + j;}
+	@Symbolic private static Integer neg(Integer i) {calls++; return -i;}
+	@Symbolic private static String name(Term t) {calls++; return t.toString();}
+	@Symbolic private static double mul(double d, double e) {calls++; return d * e;}
+}
+
+public class TieringTests extends AbstractTest {
+	public static void main(String[] args) {
+		new TieringTests().runTests();
+	}
+
+	private static Value value(Object v) {return new Value(v);}
+
+	private void check(Term t, Object expected, int calls, String what) {
+		for (int i=0; i<5; i++) { // Interpreted first, then compiled.
+			MyTiers.calls = 0;
+			check(t.evaluate(), expected, what + " (evaluation " + i + ")");
+			check(MyTiers.calls, calls, what + " calls (evaluation " + i + ")");
+		}
+	}
+
+	@Override
+	protected void run() throws Exception {
+		Term neg = MyTiers.$neg.build(value(2));
+		Term t = MyTiers.$add.build(value(1), neg);
+		check(t, -1, 2, "expression");
+
+		// Mutations below the root send it back to the interpreter.
+		neg.terms().set(0, value(3));
+		check(t, -2, 2, "mutated subterm");
+
+		t.terms().set(1, MyTiers.$add.build(value(1), value(1)));
+		check(t, 3, 2, "mutated root");
+
+		neg.quote().terms().set(0, value(4));
+		t.terms().set(1, neg);
+		check(t, -3, 2, "mutated quoted copy");
+
+		MethodSymbol.ExpressionSymbol n = MyTiers.$add.build(value(1), value(1));
+		Term bound = n.bind(null);
+		check(bound, 2, 1, "bound copy");
+		n.terms().set(0, value(2));
+		check(bound, 3, 1, "mutated original");
+
+		// Subterms shared by many expressions still send all of them back to the interpreter.
+		Term shared = MyTiers.$neg.build(value(1));
+		Term[] parents = new Term[100000];
+		for (int i=0; i<parents.length; i++) {parents[i] = MyTiers.$add.build(value(i), shared);}
+		check(parents[0], -1, 2, "shared subterm");
+		check(parents[parents.length - 1], parents.length - 2, 2, "other parent of a shared subterm");
+		shared.terms().set(0, value(2));
+		check(parents[0], -2, 2, "mutated shared subterm");
+		check(parents[parents.length - 1], parents.length - 3, 2, "other parent of a mutated shared subterm");
+
+		// Primitive evaluations are tiered as well.
+		Term sq = MyTiers.$mul.build(value(3.), value(3.));
+		Term p = MyTiers.$mul.build(value(2.), sq);
+		for (int i=0; i<5; i++) {
+			MyTiers.calls = 0;
+			check(p.evaluateAsDouble(null), 18., "primitive expression (evaluation " + i + ")");
+			check(MyTiers.calls, 2, "primitive expression calls (evaluation " + i + ")");
+		}
+		sq.terms().set(0, value(4.));
+		check(p.evaluateAsDouble(null), 24., "mutated primitive expression");
+		check(p, 24., 2, "boxed primitive expression");
+
+		// Quoted arguments are constants.
+		check(MyTiers.$name.build(MyTiers.$neg.build(value(1)).quote()), "neg(#)", 1, "quoted argument");
+	}
+}